@@ -15,6 +15,7 @@ plugins {
     alias(libs.plugins.spotless)
     alias(libs.plugins.shadow)
     alias(libs.plugins.download)
+    alias(libs.plugins.jmh)
 
     `maven-publish`
     signing
@@ -60,6 +61,15 @@ tasks.withType<Sign>().configureEach {
     enabled = isCiBuild && !isSnapshot
 }
 
+// Benchmarks live in src/jmh/java, run them with `./gradlew jmh`.
+// Results are written as json so they can be compared between releases.
+jmh {
+    jmhVersion = libs.versions.jmh.get()
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("reports/jmh/results.json")
+    includes = providers.gradleProperty("jmhIncludes").map { listOf(it) }.orElse(emptyList())
+}
+
 tasks {
     jar {
         enabled = false
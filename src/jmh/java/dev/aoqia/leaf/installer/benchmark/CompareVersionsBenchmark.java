@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import dev.aoqia.leaf.installer.util.Utils;
+
+/**
+ * Version comparison, which runs for every pair of versions when sorting the loader and game version lists.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompareVersionsBenchmark {
+    @Param({"0.10.2", "42.0.0-unstable.10"})
+    public String version;
+
+    private String[] others;
+
+    @Setup
+    public void setup() {
+        others = new String[] {"0.9.0", "0.10.12", "41.78.16", "42.0.0", "42.0.0-unstable.2", "1.0.0-beta+build"};
+    }
+
+    @Benchmark
+    public void compareVersions(Blackhole blackhole) {
+        for (String other : others) {
+            blackhole.consume(Utils.compareVersions(version, other));
+        }
+    }
+}
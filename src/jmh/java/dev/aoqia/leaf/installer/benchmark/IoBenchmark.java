@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.aoqia.leaf.installer.util.Checksum;
+import dev.aoqia.leaf.installer.util.Hashing;
+import dev.aoqia.leaf.installer.util.Utils;
+
+/**
+ * Reading and hashing, the work done for every library and metadata response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IoBenchmark {
+    // Roughly a metadata response, a small library and a large one.
+    @Param({"16384", "1048576", "8388608"})
+    public int size;
+
+    private byte[] data;
+    private byte[] digest;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        data = new byte[size];
+        new Random(size).nextBytes(data);
+
+        file = Files.createTempFile("leaf-benchmark", ".jar");
+        Files.write(file, data);
+        digest = Utils.sha1(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public String readString() throws IOException {
+        return Utils.readString(new ByteArrayInputStream(data));
+    }
+
+    @Benchmark
+    public String sha1String() throws IOException {
+        return Utils.bytesToHex(Utils.sha1(file));
+    }
+
+    @Benchmark
+    public byte[][] allDigests() throws IOException {
+        return Hashing.digest(file, Checksum.Algorithm.values());
+    }
+
+    @Benchmark
+    public String bytesToHex() {
+        return Utils.bytesToHex(digest);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import dev.aoqia.leaf.installer.util.JarInspector;
+import dev.aoqia.leaf.installer.util.Utils;
+
+/**
+ * Reading the descriptors and class names of a loader jar, with ZipFile as the installer used to and with
+ * {@link JarInspector}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JarBenchmark {
+    // Roughly the loader, and a large library.
+    @Param({"300", "5000"})
+    public int classes;
+
+    private Path jar;
+    private long modified;
+
+    @Setup
+    public void setup() throws IOException {
+        jar = Files.createTempFile("leaf-benchmark", ".jar");
+
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry(JarInspector.MOD_JSON));
+            out.write("{\"version\":\"0.1.0\"}".getBytes());
+            out.putNextEntry(new ZipEntry(JarInspector.INSTALLER_JSON));
+            out.write(Payloads.loaderJson(40));
+
+            final byte[] body = new byte[2048];
+            Payloads.random().nextBytes(body);
+            for (int i = 0; i < classes; i++) {
+                out.putNextEntry(new ZipEntry("dev/aoqia/leaf/benchmark/Class" + i + ".class"));
+                out.write(body);
+            }
+        }
+
+        modified = Files.getLastModifiedTime(jar).toMillis();
+    }
+
+    // Every invocation sees a changed jar, so the inspector can't answer from its cache.
+    @Setup(Level.Invocation)
+    public void touch() throws IOException {
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(++modified));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(jar);
+    }
+
+    @Benchmark
+    public void zipFile(Blackhole blackhole) throws IOException {
+        try (ZipFile zf = new ZipFile(jar.toFile())) {
+            for (String name : new String[] { JarInspector.MOD_JSON, JarInspector.INSTALLER_JSON }) {
+                try (InputStream is = zf.getInputStream(zf.getEntry(name))) {
+                    blackhole.consume(Utils.readString(is));
+                }
+            }
+
+            final List<String> names = new ArrayList<>();
+            final Enumeration<? extends ZipEntry> entries = zf.entries();
+            while (entries.hasMoreElements()) {
+                names.add(entries.nextElement().getName());
+            }
+            blackhole.consume(names);
+        }
+    }
+
+    @Benchmark
+    public JarInspector.Contents inspect() throws IOException {
+        return JarInspector.inspect(jar);
+    }
+}
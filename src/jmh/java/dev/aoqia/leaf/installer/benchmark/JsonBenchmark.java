@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.aoqia.leaf.installer.util.Utils;
+import dev.aoqia.leaf.installer.util.json.GitTree;
+import dev.aoqia.leaf.installer.util.json.LoaderJson;
+import dev.aoqia.leaf.installer.util.json.VersionTable;
+
+/**
+ * Decoding of the metadata json the installer downloads on startup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+    private byte[] loaderJson;
+    private byte[] gitTree;
+    private byte[] versionTable;
+
+    @Setup
+    public void setup() {
+        loaderJson = Payloads.loaderJson(40);
+        gitTree = Payloads.gitTree(1500);
+        versionTable = Payloads.versionTable(400);
+    }
+
+    @Benchmark
+    public LoaderJson loaderJson() throws IOException {
+        return Utils.deserializeJson(loaderJson, LoaderJson.class);
+    }
+
+    @Benchmark
+    public GitTree gitTree() throws IOException {
+        return Utils.deserializeJson(gitTree, GitTree.class);
+    }
+
+    @Benchmark
+    public VersionTable versionTable() throws IOException {
+        return Utils.deserializeJson(versionTable, VersionTable.class);
+    }
+}
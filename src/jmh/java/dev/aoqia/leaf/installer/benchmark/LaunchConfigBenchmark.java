@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.aoqia.leaf.installer.util.InstallManifest;
+import dev.aoqia.leaf.installer.util.InstallerProgress;
+import dev.aoqia.leaf.installer.util.Library;
+import dev.aoqia.leaf.installer.util.LaunchConfigUtil;
+import dev.aoqia.leaf.installer.util.Utils;
+import dev.aoqia.leaf.installer.util.json.LoaderJson;
+
+/**
+ * Launcher config generation, which adds every jar of the install to the game's classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LaunchConfigBenchmark {
+    private static final String MAIN_CLASS = "dev/aoqia/leaf/loader/impl/launch/knot/KnotServer";
+    private static final String CONFIG = """
+        {
+            "mainClass": "zombie/gameStates/MainScreenState",
+            "classpath": [".", "commons-compress-1.18.jar", "istack-commons-runtime.jar", "jassimp.jar",
+                "javacord-2.0.17-shaded.jar", "javax.activation-api.jar", "jaxb-api.jar", "jaxb-runtime.jar",
+                "lwjgl.jar", "lwjgl-glfw.jar", "lwjgl-jemalloc.jar", "lwjgl-opengl.jar", "lwjgl_util.jar",
+                "sqlite-jdbc-3.27.2.1.jar", "trove-3.0.3.jar", "uncommons-maths-1.2.3.jar"],
+            "vmArgs": ["-Djava.awt.headless=true", "-Xmx3072m", "-Dzomboid.steam=1", "-Dzomboid.znetlog=1",
+                "-Djava.library.path=win64/;.", "-XX:-CreateCoredumpOnCrash", "-XX:-OmitStackTraceInFastThrow"]
+        }
+        """;
+
+    @Param({"40", "400"})
+    public int jars;
+
+    private Path gameDir;
+    private LaunchConfigUtil util;
+
+    @Setup
+    public void setup() throws IOException {
+        gameDir = Files.createTempDirectory("leaf-benchmark");
+        Files.writeString(gameDir.resolve("ProjectZomboid64.json"), CONFIG, StandardCharsets.UTF_8);
+
+        // Laid out like a real install, with an install state listing the jars.
+        final Path libsDir = gameDir.resolve(Utils.LEAF_FOLDER).resolve("libraries");
+        final InstallManifest manifest = new InstallManifest(gameDir, null, "server", "0.0.0", null, MAIN_CLASS);
+        for (String dependency : Payloads.dependencies(jars)) {
+            final Library library = new Library(dependency, "");
+            final Path jar = libsDir.resolve("%s-%s.jar".formatted(library.artifactId, library.version));
+            Files.createDirectories(jar.getParent());
+            Files.createFile(jar);
+            manifest.add(new LoaderJson.Library(dependency, "", null, null, null, null, null), jar);
+        }
+        manifest.commit(InstallerProgress.CONSOLE);
+
+        util = new LaunchConfigUtil(gameDir);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Payloads.deleteRecursively(gameDir);
+    }
+
+    @Benchmark
+    public void createConfig() throws IOException {
+        util.createConfig("ProjectZomboidLeaf64", MAIN_CLASS);
+    }
+}
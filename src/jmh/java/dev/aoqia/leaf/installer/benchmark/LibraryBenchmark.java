@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import dev.aoqia.leaf.installer.util.Library;
+
+/**
+ * Maven coordinate to url and path mapping, done for every library on every install.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LibraryBenchmark {
+    private Library[] libraries;
+
+    @Setup
+    public void setup() {
+        final String[] dependencies = Payloads.dependencies(40);
+        libraries = new Library[dependencies.length];
+
+        for (int i = 0; i < dependencies.length; i++) {
+            libraries[i] = new Library(dependencies[i], "https://maven.aoqia.dev/releases/");
+        }
+    }
+
+    @Benchmark
+    public void getURL(Blackhole blackhole) {
+        for (Library library : libraries) {
+            blackhole.consume(library.getURL());
+        }
+    }
+
+    @Benchmark
+    public void getPath(Blackhole blackhole) {
+        for (Library library : libraries) {
+            blackhole.consume(library.getPath());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates payloads shaped like the real metadata the installer downloads, so the benchmarks don't depend on
+ * network access or on files checked into the repository.
+ */
+final class Payloads {
+    // Fixed seed, every run benchmarks the same data.
+    private static final long SEED = 0x1eaf;
+
+    private Payloads() {
+    }
+
+    static Random random() {
+        return new Random(SEED);
+    }
+
+    static String hash(Random random, int bytes) {
+        final StringBuilder builder = new StringBuilder(bytes * 2);
+
+        for (int i = 0; i < bytes; i++) {
+            builder.append(String.format(Locale.ROOT, "%02x", random.nextInt(256)));
+        }
+
+        return builder.toString();
+    }
+
+    static String[] dependencies(int count) {
+        final Random random = random();
+        final String[] dependencies = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            dependencies[i] = String.format(Locale.ROOT, "org.example.group%d:artifact-%d:%d.%d.%d", i % 7, i,
+                random.nextInt(10), random.nextInt(30), random.nextInt(100));
+        }
+
+        return dependencies;
+    }
+
+    /**
+     * A loader json the size of a typical leaf release, with every hash the real one declares.
+     */
+    static byte[] loaderJson(int libraries) {
+        final Random random = random();
+        final String[] dependencies = dependencies(libraries);
+        final StringBuilder json = new StringBuilder("{\"libraries\":{\"client\":[],\"common\":[");
+
+        for (int i = 0; i < libraries; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+
+            json.append("{\"name\":\"").append(dependencies[i])
+                .append("\",\"url\":\"https://maven.aoqia.dev/releases/\"")
+                .append(",\"md5\":\"").append(hash(random, 16))
+                .append("\",\"sha1\":\"").append(hash(random, 20))
+                .append("\",\"sha256\":\"").append(hash(random, 32))
+                .append("\",\"sha512\":\"").append(hash(random, 64))
+                .append("\",\"size\":").append(10_000 + random.nextInt(2_000_000))
+                .append('}');
+        }
+
+        json.append("],\"server\":[],\"development\":[]},\"mainClass\":{")
+            .append("\"client\":\"dev.aoqia.leaf.loader.impl.launch.knot.KnotClient\",")
+            .append("\"server\":\"dev.aoqia.leaf.loader.impl.launch.knot.KnotServer\"}}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A recursive git tree response like the one listing the loader versions of the meta repository.
+     */
+    static byte[] gitTree(int entries) {
+        final Random random = random();
+        final StringBuilder json = new StringBuilder("{\"sha\":\"").append(hash(random, 20))
+            .append("\",\"url\":\"https://api.github.com/repos/aoqia194/leaf/git/trees/main\",\"tree\":[");
+
+        for (int i = 0; i < entries; i++) {
+            final boolean blob = i % 3 != 0;
+            final String sha = hash(random, 20);
+
+            if (i > 0) {
+                json.append(',');
+            }
+
+            json.append("{\"path\":\"meta/loader/0.").append(i / 3).append('.').append(i % 3)
+                .append(blob ? "/leaf-loader.json" : "").append("\",\"mode\":\"")
+                .append(blob ? "100644" : "040000").append("\",\"type\":\"")
+                .append(blob ? "blob" : "tree").append("\",\"sha\":\"").append(sha)
+                .append("\",\"url\":\"https://api.github.com/repos/aoqia194/leaf/git/")
+                .append(blob ? "blobs/" : "trees/").append(sha).append('"');
+
+            if (blob) {
+                json.append(",\"size\":").append(random.nextInt(20_000));
+            }
+
+            json.append('}');
+        }
+
+        return json.append("],\"truncated\":false}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A game version table with one entry per published build.
+     */
+    static byte[] versionTable(int versions) {
+        final Random random = random();
+        final StringBuilder json = new StringBuilder("{\"versions\":{");
+
+        for (int i = 0; i < versions; i++) {
+            final String id = String.format(Locale.ROOT, "%d.%d.%d%s", 41 + i / 200, (i / 10) % 20, i % 10,
+                i % 17 == 0 ? "-unstable." + i : "");
+
+            if (i > 0) {
+                json.append(',');
+            }
+
+            json.append('"').append(id).append("\":{\"url\":\"https://example.com/zomboid/").append(id)
+                .append(".json\",\"size\":\"").append(random.nextInt(5_000_000))
+                .append("\",\"hash\":\"").append(hash(random, 20))
+                .append("\",\"releaseTime\":\"2025-01-01T00:00:00+0000\"")
+                .append(",\"generateTime\":\"2025-01-02T00:00:00+0000\"}");
+        }
+
+        return json.append("}}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static void deleteRecursively(Path root) throws IOException {
+        if (root == null || Files.notExists(root)) {
+            return;
+        }
+
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -26,6 +26,7 @@ import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.border.EmptyBorder;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -38,17 +39,23 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 
 import dev.aoqia.leaf.installer.util.ArgumentParser;
 import dev.aoqia.leaf.installer.util.GameMetaHandler;
+import dev.aoqia.leaf.installer.util.InstallManifest;
 import dev.aoqia.leaf.installer.util.InstallerProgress;
+import dev.aoqia.leaf.installer.util.LibraryVerifier;
 import dev.aoqia.leaf.installer.util.LoaderMetaHandler;
 import dev.aoqia.leaf.installer.util.Utils;
+import dev.aoqia.leaf.installer.util.json.InstallState;
 
 import static dev.aoqia.leaf.installer.Main.GAME_VERSION_META;
 import static dev.aoqia.leaf.installer.Main.LOADER_META;
@@ -88,6 +95,13 @@ public abstract class Handler implements InstallerProgress {
 
     public abstract void installCli(ArgumentParser args) throws Exception;
 
+    /**
+     * Verifies the libraries of an existing install, and with repair replaces the broken ones.
+     *
+     * @return whether the install is valid (after repairing)
+     */
+    public abstract boolean verifyCli(ArgumentParser args, boolean repair) throws Exception;
+
     public abstract String cliHelp();
 
     // this isnt great, but works
@@ -118,7 +132,8 @@ public abstract class Handler implements InstallerProgress {
         });
 
         addRow(pane, c, "prompt.game.version", gameVersionComboBox, createSpacer(), unstableCheckbox);
-        GAME_VERSION_META.onComplete(this::updateGameVersions);
+        // Metadata loads in the background, the lists are filled in on the EDT as it arrives.
+        GAME_VERSION_META.onComplete(versions -> SwingUtilities.invokeLater(() -> updateGameVersions(versions)));
 
         loaderVersionComboBox = new JComboBox<>();
         loaderVersionComboBox.setEnabled(false);
@@ -134,7 +149,7 @@ public abstract class Handler implements InstallerProgress {
         });
 
         addRow(pane, c, "prompt.loader.version", loaderVersionComboBox, createSpacer(), loaderProxyCheckbox);
-        Main.LOADER_META.onComplete(this::updateLoaderVersions);
+        Main.LOADER_META.onComplete(versions -> SwingUtilities.invokeLater(() -> updateLoaderVersions(versions)));
 
         addRow(pane, c, "prompt.select.location", installLocation = new JTextField(20),
             selectFolderButton = new JButton());
@@ -162,6 +177,11 @@ public abstract class Handler implements InstallerProgress {
 
         addLastRow(pane, c, null, buttonInstall);
 
+        // Nothing can be installed until both version lists are in.
+        buttonInstall.setEnabled(false);
+        CompletableFuture.allOf(GAME_VERSION_META.getFuture(), LOADER_META.getFuture())
+            .thenRun(() -> SwingUtilities.invokeLater(() -> buttonInstall.setEnabled(true)));
+
         installerGui.updateSize(true);
 
         return pane;
@@ -309,10 +329,87 @@ public abstract class Handler implements InstallerProgress {
     }
 
     protected String getGameVersion(ArgumentParser args) {
+        Main.loadMetadata();
         return GAME_VERSION_META.parseVersion(args.get("gameVersion"), args.has("unstable")).id();
     }
 
     protected String getLoaderVersion(ArgumentParser args) {
+        Main.loadMetadata();
         return LOADER_META.parseVersion(args.get("loader"), false).id();
     }
+
+    /**
+     * Like {@link #getGameVersion(ArgumentParser)}, but a version given on the command line that is already installed
+     * in gameDir is known to exist, so reinstalling the same versions doesn't need any metadata.
+     */
+    protected String getGameVersion(ArgumentParser args, Path gameDir) {
+        InstallState installed = InstallManifest.read(gameDir);
+        String version = args.get("gameVersion");
+
+        return installed != null && version != null && version.equals(installed.gameVersion()) ? version
+            : getGameVersion(args);
+    }
+
+    /**
+     * See {@link #getGameVersion(ArgumentParser, Path)}.
+     */
+    protected String getLoaderVersion(ArgumentParser args, Path gameDir) {
+        InstallState installed = InstallManifest.read(gameDir);
+        String version = args.get("loader");
+
+        return installed != null && version != null && version.equals(installed.loader()) ? version
+            : getLoaderVersion(args);
+    }
+
+    /**
+     * The loader version given on the command line, or else the one installed in gameDir.
+     */
+    protected String getInstalledLoaderVersion(ArgumentParser args, Path gameDir) throws IOException {
+        if (args.has("loader")) {
+            return getLoaderVersion(args);
+        }
+
+        InstallState installed = InstallManifest.read(gameDir);
+        if (installed != null) {
+            return installed.loader();
+        }
+
+        return LibraryVerifier.findLoaderVersion(gameDir.resolve(Utils.LEAF_FOLDER).resolve("libraries"))
+            .orElseThrow(() -> new FileNotFoundException("No leaf install found in " + gameDir));
+    }
+
+    /**
+     * Make sure the install in gameDir is the one about to be verified, so a repair never replaces the libraries of
+     * one install with those of another. Without an install state there is nothing to compare against.
+     */
+    protected void checkInstallState(Path gameDir, InstallState state, String side, String loader, String gameVersion)
+        throws IOException {
+        if (state == null) {
+            return;
+        }
+
+        if (!side.equals(state.side())) {
+            throw new IOException("%s holds a %s install, not a %s one".formatted(gameDir, state.side(), side));
+        } else if (!loader.equals(state.loader())) {
+            throw new IOException("%s has loader %s installed, not %s".formatted(gameDir, state.loader(), loader));
+        } else if (gameVersion != null && !gameVersion.equals(state.gameVersion())) {
+            throw new IOException("%s was installed for %s, not %s".formatted(gameDir, state.gameVersion(),
+                gameVersion));
+        }
+    }
+
+    protected boolean verify(LibraryVerifier verifier, boolean repair, boolean deleteExtra) throws IOException {
+        LibraryVerifier.Report report = verifier.verify();
+        report.print(InstallerProgress.CONSOLE);
+
+        if (!repair || (report.isValid() && (!deleteExtra || report.extra().isEmpty()))) {
+            return report.isValid();
+        }
+
+        verifier.repair(report, deleteExtra, InstallerProgress.CONSOLE);
+
+        report = verifier.verify();
+        report.print(InstallerProgress.CONSOLE);
+        return report.isValid();
+    }
 }
@@ -18,18 +18,25 @@ package dev.aoqia.leaf.installer;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JTabbedPane;
+import javax.swing.SwingUtilities;
 import javax.swing.WindowConstants;
 import java.awt.Dimension;
 import java.awt.Image;
 import java.awt.Toolkit;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Method;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import com.formdev.flatlaf.themes.FlatMacDarkLaf;
 
+import dev.aoqia.leaf.installer.util.CrashDialog;
 import dev.aoqia.leaf.installer.util.Utils;
 
 public class InstallerGui extends JFrame {
@@ -49,8 +56,6 @@ public class InstallerGui extends JFrame {
         setTaskBarImage(iconImage);
 
         instance = this;
-
-        Main.loadMetadata();
     }
 
     public static void selectInstallLocation(Supplier<String> initalDir, Consumer<String> selectedDir) {
@@ -65,13 +70,48 @@ public class InstallerGui extends JFrame {
         }
     }
 
+    /**
+     * Show the installer window straight away, with the metadata loading in the background.
+     * The time to the first frame and until the installer is usable is logged, relative to JVM start.
+     */
     public static void start() {
-        FlatMacDarkLaf.setup();
-        InstallerGui dialog = new InstallerGui();
-        dialog.updateSize(true);
-        dialog.setTitle(Utils.BUNDLE.getString("installer.title"));
-        dialog.setLocationRelativeTo(null);
-        dialog.setVisible(true);
+        // Start fetching before building the window, the handlers pick the versions up whenever they arrive.
+        final CompletableFuture<Void> metadata = Main.loadMetadataAsync();
+
+        SwingUtilities.invokeLater(() -> {
+            try {
+                FlatMacDarkLaf.setup();
+                InstallerGui dialog = new InstallerGui();
+                dialog.updateSize(true);
+                dialog.setTitle(Utils.BUNDLE.getString("installer.title"));
+                dialog.setLocationRelativeTo(null);
+                dialog.addWindowListener(new WindowAdapter() {
+                    @Override
+                    public void windowOpened(WindowEvent e) {
+                        logStartup("First frame");
+                    }
+                });
+                dialog.setVisible(true);
+            } catch (Exception e) {
+                e.printStackTrace();
+                new CrashDialog(e);
+                return;
+            }
+
+            metadata.whenComplete((unused, t) -> SwingUtilities.invokeLater(() -> {
+                if (t != null) {
+                    Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                    cause.printStackTrace();
+                    new CrashDialog(new RuntimeException("Unable to load metadata", cause));
+                } else {
+                    logStartup("Interactive");
+                }
+            }));
+        });
+    }
+
+    private static void logStartup(String stage) {
+        System.out.printf("%s after %d ms%n", stage, ManagementFactory.getRuntimeMXBean().getUptime());
     }
 
     private static void setTaskBarImage(Image image) {
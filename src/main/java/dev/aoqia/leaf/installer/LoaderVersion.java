@@ -15,16 +15,12 @@
  */
 package dev.aoqia.leaf.installer;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Path;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipError;
-import java.util.zip.ZipFile;
 
 import com.dslplatform.json.CompiledJson;
 
+import dev.aoqia.leaf.installer.util.JarInspector;
 import dev.aoqia.leaf.installer.util.Utils;
 
 public final class LoaderVersion {
@@ -37,23 +33,8 @@ public final class LoaderVersion {
     }
 
     public LoaderVersion(Path path) throws IOException {
-        try (ZipFile zf = new ZipFile(path.toFile())) {
-            ZipEntry entry = zf.getEntry("leaf.mod.json");
-            if (entry == null) {
-                throw new FileNotFoundException("leaf.mod.json");
-            }
-
-            String modJsonContent;
-
-            try (InputStream is = zf.getInputStream(entry)) {
-                modJsonContent = Utils.readString(is);
-            }
-
-            this.name = Utils.deserializeJson(modJsonContent, ModJson.class).version();
-        } catch (ZipError e) {
-            throw new IOException(e);
-        }
-
+        this.name = Utils.deserializeJson(JarInspector.inspect(path).getDescriptor(JarInspector.MOD_JSON),
+            ModJson.class).version();
         this.path = path;
     }
 
@@ -16,21 +16,42 @@
 package dev.aoqia.leaf.installer;
 
 import java.awt.GraphicsEnvironment;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 import com.dslplatform.json.DslJson;
 import com.dslplatform.json.runtime.Settings;
 
 import dev.aoqia.leaf.installer.client.ClientHandler;
 import dev.aoqia.leaf.installer.server.ServerHandler;
+import dev.aoqia.leaf.installer.util.AppCds;
 import dev.aoqia.leaf.installer.util.ArgumentParser;
+import dev.aoqia.leaf.installer.util.ArtifactCache;
+import dev.aoqia.leaf.installer.util.Bundle;
+import dev.aoqia.leaf.installer.util.CacheServer;
 import dev.aoqia.leaf.installer.util.CrashDialog;
 import dev.aoqia.leaf.installer.util.GameMetaHandler;
 import dev.aoqia.leaf.installer.util.GithubMetaHandler;
+import dev.aoqia.leaf.installer.util.HttpClient;
+import dev.aoqia.leaf.installer.util.InstallManifest;
+import dev.aoqia.leaf.installer.util.InstallerProgress;
+import dev.aoqia.leaf.installer.util.JvmProfile;
+import dev.aoqia.leaf.installer.util.LaunchConfigUtil;
 import dev.aoqia.leaf.installer.util.LeafService;
+import dev.aoqia.leaf.installer.util.LibraryDownloader;
+import dev.aoqia.leaf.installer.util.MetaCache;
 import dev.aoqia.leaf.installer.util.OperatingSystem;
 import dev.aoqia.leaf.installer.util.Reference;
+import dev.aoqia.leaf.installer.util.json.InstallState;
 
 public class Main {
     public static final List<Handler> HANDLERS = new ArrayList<>();
@@ -40,6 +61,12 @@ public class Main {
     public static GithubMetaHandler LOADER_META;
     public static GithubMetaHandler LOADER_PROXY_META;
 
+    private static final Executor METADATA_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "Metadata Loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     public static void main(String[] args) {
         if (OperatingSystem.CURRENT == OperatingSystem.WINDOWS) {
             // Use the operating system cert store
@@ -63,6 +90,59 @@ public class Main {
         if (metaUrl != null || mavenUrl != null) {
             LeafService.setFixed(metaUrl, mavenUrl);
         }
+        String githubUrl = argumentParser.get("githuburl");
+        if (githubUrl != null) {
+            LeafService.setGithubUrl(githubUrl);
+        }
+
+        // Shared artifact cache, see ArtifactCache.
+        String cacheDir = argumentParser.get("cachedir");
+        if (cacheDir != null) {
+            ArtifactCache.setDirectory(Path.of(cacheDir));
+        }
+        if (argumentParser.has("nocache")) {
+            ArtifactCache.setEnabled(false);
+            MetaCache.setEnabled(false);
+        }
+
+        // How long metadata is served from disk before being revalidated, in seconds.
+        String metaTtl = argumentParser.get("metattl");
+        if (metaTtl != null) {
+            MetaCache.setTtl(Duration.ofSeconds(Long.parseLong(metaTtl)));
+        }
+        String metaStale = argumentParser.get("metastale");
+        if (metaStale != null) {
+            MetaCache.setStaleIfError(Duration.ofSeconds(Long.parseLong(metaStale)));
+        }
+
+        // Limits for concurrent library downloads, see LibraryDownloader.
+        String threads = argumentParser.get("threads");
+        if (threads != null) {
+            LibraryDownloader.setThreads(Integer.parseInt(threads));
+        }
+        String hostConnections = argumentParser.get("hostconnections");
+        if (hostConnections != null) {
+            LibraryDownloader.setConnectionsPerHost(Integer.parseInt(hostConnections));
+        }
+        String segments = argumentParser.get("segments");
+        if (segments != null) {
+            HttpClient.setSegments(Integer.parseInt(segments));
+        }
+
+        // One classpath jar or argument file instead of every library in the launch config, see LaunchConfigUtil.
+        if (argumentParser.has("compactclasspath")) {
+            LaunchConfigUtil.setCompactClasspath(true);
+        }
+        if (argumentParser.has("appcds")) {
+            AppCds.setEnabled(true);
+        }
+        if (argumentParser.has("jvmprofile")) {
+            JvmProfile.setEnabled(true);
+        }
+        String jvmServers = argumentParser.get("jvmservers");
+        if (jvmServers != null) {
+            JvmProfile.setServers(Integer.parseInt(jvmServers));
+        }
 
         GAME_VERSION_META = new GameMetaHandler(Reference.ZOMBOID_VERSION_MANIFEST);
         LOADER_META = new GithubMetaHandler("aoqia194", "leaf", "main", new String[] { "dist", "loader" });
@@ -82,15 +162,88 @@ public class Main {
             }
         } else if (command.equals("help")) {
             System.out.println("help - Opens this menu");
+            System.out.println("mirrors - Measures and lists the available mirrors, best first");
+            System.out.println("bundle -loader <loader version, default latest> -pzversion <zomboid version, default latest> "
+                + "-output <bundle file> - Downloads a loader and its libraries into an offline install bundle");
+            System.out.println("verify|repair -side <client|server, default installed> -dir <install dir> "
+                + "-loader <loader version, default installed> -deleteextra - Checks the installed libraries, repair "
+                + "also replaces missing and corrupt ones, and with -deleteextra deletes jars left by an older install");
+            System.out.println("serve -bind <address, default all> -port <port, default " + CacheServer.DEFAULT_PORT
+                + "> - Runs a pull-through cache server for other installers");
             HANDLERS.forEach(handler -> System.out.printf("%s %s\n", handler.name().toLowerCase(), handler.cliHelp()));
             loadMetadata();
 
             System.out.printf("\nLatest Version: %s\nLatest Loader: %s\n",
                 GAME_VERSION_META.getLatestVersion(argumentParser.has("unstable")).id(),
                 LOADER_META.getLatestVersion().id());
-        } else {
+        } else if (command.equals("mirrors")) {
+            LeafService.probeServices();
+
+            for (LeafService service : LeafService.getServices()) {
+                System.out.printf("%s %s\n  %s\n", service.getMetaUrl(), service.getMavenUrl(), service.getStats());
+            }
+        } else if (command.equals("serve")) {
+            String bind = argumentParser.get("bind");
+            int port = Integer.parseInt(argumentParser.getOrDefault("port", () -> String.valueOf(CacheServer.DEFAULT_PORT)));
+
+            try {
+                CacheServer server = new CacheServer(
+                    bind != null ? new InetSocketAddress(bind, port) : new InetSocketAddress(port));
+                server.start();
+
+                String base = "http://%s:%d/".formatted(bind != null ? bind : "<host>", server.getAddress().getPort());
+                System.out.printf("Serving on port %d, point installers at it with:%n"
+                    + "-metaurl=%smeta/ -mavenurl=%smaven/ -githuburl=%sgithub/%n", server.getAddress().getPort(), base,
+                    base, base);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to start cache server", e);
+            }
+        } else if (command.equals("verify") || command.equals("repair")) {
+            // Without -side, verify whatever the directory actually holds rather than guessing and comparing it
+            // against the wrong set of libraries.
+            String side = argumentParser.getOrDefault("side", () -> {
+                Path dir = Path.of(argumentParser.getOrDefault("dir", () -> "."));
+                InstallState state = InstallManifest.read(dir);
+                if (state == null) {
+                    throw new IllegalArgumentException("No install state found in " + dir.toAbsolutePath()
+                        + ", pass -side");
+                }
+
+                return state.side();
+            });
+            Handler handler = HANDLERS.stream()
+                .filter(h -> h.name().equalsIgnoreCase(side))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown side " + side + ", see help"));
+
+            boolean valid;
+            try {
+                valid = handler.verifyCli(argumentParser, command.equals("repair"));
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to verify " + handler.name(), e);
+            }
+
+            if (!valid) {
+                System.exit(1);
+            }
+        } else if (command.equals("bundle")) {
             loadMetadata();
 
+            String loaderVersion = LOADER_META.parseVersion(argumentParser.get("loader"), false).id();
+            String gameVersion = GAME_VERSION_META.parseVersion(argumentParser.get("gameVersion"),
+                argumentParser.has("unstable")).id();
+            Path output = Path.of(argumentParser.getOrDefault("output", () -> "leaf-bundle-%s.zip".formatted(loaderVersion)));
+
+            try {
+                Bundle.create(output, loaderVersion, gameVersion, InstallerProgress.CONSOLE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to create bundle " + output, e);
+            }
+
+            System.out.println("Created bundle " + output.toAbsolutePath());
+        } else {
+            // Metadata is loaded by the handler once it is needed. Installing from a bundle, or reinstalling the
+            // versions that are already installed, must work without any network access.
             for (Handler handler : HANDLERS) {
                 if (command.equalsIgnoreCase(handler.name())) {
                     try {
@@ -109,10 +262,17 @@ public class Main {
 
     public static void loadMetadata() {
         try {
-            LOADER_META.load();
-            GAME_VERSION_META.load();
-        } catch (Throwable t) {
-            throw new RuntimeException("Unable to load metadata", t);
+            loadMetadataAsync().join();
+        } catch (CompletionException e) {
+            throw new RuntimeException("Unable to load metadata", e.getCause());
         }
     }
+
+    /**
+     * Load every meta handler at once, so startup only waits for the slowest one. Handlers are only loaded once.
+     */
+    public static CompletableFuture<Void> loadMetadataAsync() {
+        return CompletableFuture.allOf(LOADER_META.loadAsync(METADATA_EXECUTOR),
+            LOADER_PROXY_META.loadAsync(METADATA_EXECUTOR), GAME_VERSION_META.loadAsync(METADATA_EXECUTOR));
+    }
 }
@@ -28,10 +28,14 @@ import dev.aoqia.leaf.installer.Handler;
 import dev.aoqia.leaf.installer.InstallerGui;
 import dev.aoqia.leaf.installer.LoaderVersion;
 import dev.aoqia.leaf.installer.util.ArgumentParser;
+import dev.aoqia.leaf.installer.util.Bundle;
+import dev.aoqia.leaf.installer.util.InstallManifest;
 import dev.aoqia.leaf.installer.util.InstallerProgress;
+import dev.aoqia.leaf.installer.util.LibraryDownloader;
 import dev.aoqia.leaf.installer.util.NoopCaret;
 import dev.aoqia.leaf.installer.util.Reference;
 import dev.aoqia.leaf.installer.util.Utils;
+import dev.aoqia.leaf.installer.util.json.InstallState;
 
 public class ClientHandler extends Handler {
     @Override
@@ -102,17 +106,43 @@ public class ClientHandler extends Handler {
             throw new FileNotFoundException("Game directory not found at " + path);
         }
 
-        String gameVersion = getGameVersion(args);
-        LoaderVersion loaderVersion = new LoaderVersion(getLoaderVersion(args));
+        String bundlePath = args.get("bundle");
+        if (bundlePath != null) {
+            try (Bundle bundle = Bundle.open(bundlePath)) {
+                String gameVersion = args.getOrDefault("gameVersion", bundle::getGameVersion);
+                new ClientInstaller(path, gameVersion, bundle, InstallerProgress.CONSOLE).install(!args.has("manual"));
+            }
+
+            return;
+        }
+
+        String gameVersion = getGameVersion(args, path);
+        LoaderVersion loaderVersion = new LoaderVersion(getLoaderVersion(args, path));
 
         new ClientInstaller(path, gameVersion, loaderVersion, InstallerProgress.CONSOLE).install(
             !args.has("manual"));
     }
 
+    @Override
+    public boolean verifyCli(ArgumentParser args, boolean repair) throws Exception {
+        Path path = Paths.get(args.getOrDefault("dir", () -> Utils.getClientGamePath().toString()));
+        InstallState state = InstallManifest.read(path);
+        LoaderVersion loaderVersion = new LoaderVersion(getInstalledLoaderVersion(args, path));
+        String gameVersion = args.getOrDefault("gameVersion", () -> state != null ? state.gameVersion() : null);
+        checkInstallState(path, state, "client", loaderVersion.name, gameVersion);
+
+        return verify(new ClientInstaller(path, gameVersion, loaderVersion, InstallerProgress.CONSOLE)
+            .createVerifier(), repair, args.has("deleteextra"));
+    }
+
     @Override
     public String cliHelp() {
         return "-dir <install dir> " + "-pzversion <zomboid version, default latest> "
-            + "-loader <loader version, default latest>";
+            + "-loader <loader version, default latest> "
+            + "-threads <concurrent downloads, default " + LibraryDownloader.DEFAULT_THREADS + "> "
+            + "-hostconnections <concurrent downloads per host, default "
+            + LibraryDownloader.DEFAULT_CONNECTIONS_PER_HOST + "> "
+            + "-bundle <offline bundle to install from, - for stdin>";
     }
 
     @Override
@@ -19,29 +19,40 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.MessageFormat;
+import java.util.List;
+import java.util.function.BiConsumer;
 
 import org.apache.commons.collections4.iterators.IteratorChain;
 
 import dev.aoqia.leaf.installer.LoaderVersion;
+import dev.aoqia.leaf.installer.util.Bundle;
+import dev.aoqia.leaf.installer.util.InstallManifest;
 import dev.aoqia.leaf.installer.util.InstallerProgress;
 import dev.aoqia.leaf.installer.util.LeafService;
 import dev.aoqia.leaf.installer.util.Library;
+import dev.aoqia.leaf.installer.util.LibraryDownloader;
+import dev.aoqia.leaf.installer.util.LibraryVerifier;
 import dev.aoqia.leaf.installer.util.Reference;
 import dev.aoqia.leaf.installer.util.Utils;
+import dev.aoqia.leaf.installer.util.json.InstallState;
 import dev.aoqia.leaf.installer.util.json.LoaderJson;
 
 public class ClientInstaller {
+    private static final String SIDE = "client";
+
     private final Path gameDir;
     private final String gameVersion;
     private final Path libsDir;
     private final LoaderVersion loaderVersion;
     private final InstallerProgress progress;
+    private final Bundle bundle;
 
     public ClientInstaller(Path gameDir, String gameVersion, InstallerProgress progress) {
         this.gameDir = gameDir;
         this.gameVersion = gameVersion;
         this.loaderVersion = null;
         this.progress = progress;
+        this.bundle = null;
 
         this.libsDir = gameDir.resolve(".leaf/libraries");
     }
@@ -51,6 +62,20 @@ public class ClientInstaller {
         this.gameVersion = gameVersion;
         this.loaderVersion = loaderVersion;
         this.progress = progress;
+        this.bundle = null;
+
+        this.libsDir = gameDir.resolve(".leaf/libraries");
+    }
+
+    /**
+     * Install the loader contained in an offline bundle, without any network access.
+     */
+    public ClientInstaller(Path gameDir, String gameVersion, Bundle bundle, InstallerProgress progress) {
+        this.gameDir = gameDir;
+        this.gameVersion = gameVersion;
+        this.loaderVersion = new LoaderVersion(bundle.getLoaderVersion());
+        this.progress = progress;
+        this.bundle = bundle;
 
         this.libsDir = gameDir.resolve(".leaf/libraries");
     }
@@ -59,36 +84,64 @@ public class ClientInstaller {
         System.out.printf("Installing %s with leaf %s%n", gameVersion, loaderVersion.name);
 
         String configName = String.format("leaf-%s-%s", loaderVersion.name, gameVersion);
-        LoaderJson loaderVersionJson = LeafService.queryMetaJson("loader/%s.json".formatted(loaderVersion.name),
-            LoaderJson.class);
-        LoaderJson.Libraries libsJson = loaderVersionJson.libraries();
-
-        Files.createDirectories(this.libsDir);
+        InstallState state = InstallManifest.read(gameDir);
+        if (InstallManifest.isUpToDate(gameDir, state, SIDE, loaderVersion.name, gameVersion)) {
+            progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.install.unchanged")).format(
+                new Object[] { loaderVersion.name }));
+            return configName;
+        }
 
-        // Putting loader dependency into the libs list for later download.
-        libsJson
-            .common()
-            .add(new LoaderJson.Library("dev.aoqia.leaf:loader:" + loaderVersion.name, Reference.DEFAULT_MAVEN_SERVER,
-                null, null, null, null, null));
-
-        final var libs = new IteratorChain<>(libsJson.common().iterator(), libsJson.client().iterator());
-
-        libs.forEachRemaining(libJson -> {
-            Library library = new Library(libJson);
-            Path libraryFile = libsDir.resolve("%s-%s.jar".formatted(library.artifactId, library.version));
-            String url = library.getURL();
+        LoaderJson loaderVersionJson = getLoaderJson();
 
-            progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.download.library.entry")).format(
-                new Object[] { library.dependency }));
+        Files.createDirectories(this.libsDir);
 
-            try {
-                LeafService.downloadSubstitutedMaven(url, libraryFile);
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to download library " + library.artifactId, e);
+        final var manifest = new InstallManifest(gameDir, state, SIDE, loaderVersion.name, gameVersion,
+            loaderVersionJson.mainClass().client());
+        final var downloader = new LibraryDownloader(progress, bundle);
+        forEachLibrary(loaderVersionJson, (libJson, target) -> {
+            if (manifest.add(libJson, target)) {
+                progress.updateProgress(new MessageFormat(
+                    Utils.BUNDLE.getString("progress.download.library.unchanged")).format(
+                    new Object[] { libJson.name() }));
+            } else {
+                downloader.add(libJson, target);
             }
         });
+        downloader.download();
+        manifest.commit(progress);
 
         progress.updateProgress(Utils.BUNDLE.getString("progress.done"));
         return configName;
     }
+
+    /**
+     * A verifier for the libraries this install is expected to contain, see {@link LibraryVerifier}.
+     */
+    public LibraryVerifier createVerifier() throws IOException {
+        final var state = InstallManifest.read(gameDir);
+        final var verifier = new LibraryVerifier(libsDir,
+            state != null ? InstallManifest.getLibraries(gameDir, state) : List.of());
+        forEachLibrary(getLoaderJson(), verifier::add);
+        return verifier;
+    }
+
+    private LoaderJson getLoaderJson() throws IOException {
+        return bundle != null ? bundle.getLoaderJson()
+            : LeafService.queryMetaJson("loader/%s.json".formatted(loaderVersion.name), LoaderJson.class);
+    }
+
+    private void forEachLibrary(LoaderJson loaderJson, BiConsumer<LoaderJson.Library, Path> consumer) {
+        LoaderJson.Libraries libsJson = loaderJson.libraries();
+
+        // The loader itself is installed like any other library, after the common ones.
+        final var loader = new LoaderJson.Library("dev.aoqia.leaf:loader:" + loaderVersion.name,
+            Reference.DEFAULT_MAVEN_SERVER, null, null, null, null, null);
+
+        final var libs = new IteratorChain<>(libsJson.common().iterator(), List.of(loader).iterator(),
+            libsJson.client().iterator());
+        libs.forEachRemaining(libJson -> {
+            Library library = new Library(libJson);
+            consumer.accept(libJson, libsDir.resolve("%s-%s.jar".formatted(library.artifactId, library.version)));
+        });
+    }
 }
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import dev.aoqia.leaf.installer.util.ArtifactCache;
+import dev.aoqia.leaf.installer.util.InstallerProgress;
+import dev.aoqia.leaf.installer.util.Utils;
+
+/**
+ * Installs the same loader into many server directories in one run.
+ *
+ * <p>The loader json and every library are resolved a single time into a staging folder next to the artifact
+ * cache, then each directory is installed from it in parallel. An extra server costs a hardlink per changed library
+ * instead of a download, and servers that are already up to date cost nothing at all.
+ */
+public class ServerFleetInstaller {
+    private static final int THREADS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    private static final Pattern GLOB_CHARS = Pattern.compile("[*?\\[{]");
+
+    private final List<ServerInstaller> installers = new ArrayList<>();
+    private final List<Path> dirs;
+    private final InstallerProgress progress;
+
+    /**
+     * @param factory creates the installer of a single directory, reporting to the given progress
+     */
+    public ServerFleetInstaller(List<Path> dirs, InstallerFactory factory, InstallerProgress progress) {
+        this.dirs = dirs;
+        this.progress = progress;
+
+        for (int i = 0; i < dirs.size(); i++) {
+            final String prefix = "[%d/%d] ".formatted(i + 1, dirs.size());
+            installers.add(factory.create(dirs.get(i), new InstallerProgress() {
+                @Override
+                public void updateProgress(String text) {
+                    synchronized (progress) {
+                        progress.updateProgress(prefix + text);
+                    }
+                }
+
+                @Override
+                public void error(Throwable throwable) {
+                    progress.error(throwable);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Expand a list of directories separated by the platform path separator, where each entry may be a glob such
+     * as /srv/zomboid/*. Only existing directories are returned, sorted and without duplicates.
+     */
+    public static List<Path> findDirectories(String list) throws IOException {
+        final TreeSet<Path> dirs = new TreeSet<>();
+
+        for (String entry : list.split(Pattern.quote(File.pathSeparator))) {
+            if (entry.isBlank()) {
+                continue;
+            }
+
+            if (!GLOB_CHARS.matcher(entry).find()) {
+                final Path dir = Path.of(entry).toAbsolutePath().normalize();
+                if (Files.isDirectory(dir)) {
+                    dirs.add(dir);
+                }
+
+                continue;
+            }
+
+            // Walk from the deepest folder without wildcards, as deep as the pattern reaches.
+            final String[] segments = entry.split("[/\\\\]", -1);
+            int first = 0;
+            while (!GLOB_CHARS.matcher(segments[first]).find()) {
+                first++;
+            }
+
+            String baseName = String.join("/", List.of(segments).subList(0, first));
+            if (first > 0 && (baseName.isEmpty() || baseName.endsWith(":"))) {
+                // A root, such as / or C:\
+                baseName += "/";
+            }
+
+            final Path base = Path.of(baseName.isEmpty() ? "." : baseName).toAbsolutePath().normalize();
+            final String pattern = String.join("/", List.of(segments).subList(first, segments.length));
+            final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            final int depth = pattern.contains("**") ? Integer.MAX_VALUE : segments.length - first;
+
+            if (!Files.isDirectory(base)) {
+                continue;
+            }
+
+            try (Stream<Path> stream = Files.walk(base, depth)) {
+                stream.filter(path -> !path.equals(base) && Files.isDirectory(path))
+                    .filter(path -> matcher.matches(base.relativize(path)))
+                    .forEach(dirs::add);
+            }
+        }
+
+        return List.copyOf(dirs);
+    }
+
+    /**
+     * Install every directory, never failing as a whole because one directory did. If the shared prefetch fails,
+     * each directory falls back to resolving its own libraries and reports its own failure, except when installing
+     * from a bundle, which the failed prefetch has already consumed, so the whole run fails instead.
+     */
+    public List<Result> install(boolean createConfig) throws IOException {
+        final List<Boolean> upToDate = installers.stream().map(ServerInstaller::isUpToDate).toList();
+        final int pending = (int) upToDate.stream().filter(value -> !value).count();
+        final Path staging = pending > 1 ? prefetch(upToDate, pending) : null;
+
+        try {
+            return installAll(createConfig, upToDate);
+        } finally {
+            if (staging != null) {
+                deleteRecursively(staging);
+            }
+        }
+    }
+
+    /**
+     * Resolve everything once into a staging folder shared by every installer, or null if that failed and each
+     * installer can resolve its own libraries instead.
+     */
+    private Path prefetch(List<Boolean> upToDate, int pending) throws IOException {
+        final ServerInstaller source = installers.get(upToDate.indexOf(false));
+        Path staging = null;
+
+        try {
+            Files.createDirectories(ArtifactCache.getDirectory());
+            staging = Files.createTempDirectory(ArtifactCache.getDirectory(), "staging-");
+
+            progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.fleet.prefetch")).format(
+                new Object[] { pending }));
+            source.prefetch(staging);
+
+            for (ServerInstaller installer : installers) {
+                installer.useStaging(source, staging);
+            }
+
+            return staging;
+        } catch (IOException e) {
+            if (staging != null) {
+                deleteRecursively(staging);
+            }
+
+            if (source.usesBundle()) {
+                throw e;
+            }
+
+            System.err.println("Failed to prefetch the shared libraries, installing each server on its own: " + e);
+            return null;
+        }
+    }
+
+    private List<Result> installAll(boolean createConfig, List<Boolean> upToDate) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(THREADS, installers.size()), r -> {
+            Thread thread = new Thread(r, "Server Installer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final List<Future<Result>> futures = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < installers.size(); i++) {
+                final ServerInstaller installer = installers.get(i);
+                final Path dir = dirs.get(i);
+                final Status status = upToDate.get(i) ? Status.UNCHANGED : Status.INSTALLED;
+
+                futures.add(executor.submit(() -> {
+                    final long start = System.nanoTime();
+
+                    try {
+                        installer.install(createConfig);
+                        return new Result(dir, status, (System.nanoTime() - start) / 1_000_000, null);
+                    } catch (Exception e) {
+                        return new Result(dir, Status.FAILED, (System.nanoTime() - start) / 1_000_000,
+                            e.getMessage() != null ? e.getMessage() : e.toString());
+                    }
+                }));
+            }
+
+            final List<Result> results = new ArrayList<>(futures.size());
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Server install interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Print one line per directory followed by the totals.
+     */
+    public static void printSummary(List<Result> results, InstallerProgress progress) {
+        for (int i = 0; i < results.size(); i++) {
+            final Result result = results.get(i);
+            progress.updateProgress("[%d/%d] %-9s %6d ms  %s%s".formatted(i + 1, results.size(), result.status(),
+                result.millis(), result.dir(), result.error() != null ? ": " + result.error() : ""));
+        }
+
+        progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.fleet.summary")).format(
+            new Object[] { count(results, Status.INSTALLED), count(results, Status.UNCHANGED),
+                count(results, Status.FAILED) }));
+    }
+
+    private static long count(List<Result> results, Status status) {
+        return results.stream().filter(result -> result.status() == status).count();
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> stream = Files.walk(dir)) {
+            for (Path path : stream.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to delete staging folder " + dir + ": " + e);
+        }
+    }
+
+    public enum Status {
+        INSTALLED, UNCHANGED, FAILED
+    }
+
+    @FunctionalInterface
+    public interface InstallerFactory {
+        ServerInstaller create(Path dir, InstallerProgress progress);
+    }
+
+    public record Result(Path dir, Status status, long millis, String error) {
+    }
+}
@@ -16,19 +16,30 @@
 package dev.aoqia.leaf.installer.server;
 
 import java.awt.*;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.MessageFormat;
+import java.util.List;
+import java.util.TreeSet;
 
 import dev.aoqia.leaf.installer.Handler;
 import dev.aoqia.leaf.installer.InstallerGui;
 import dev.aoqia.leaf.installer.LoaderVersion;
 import dev.aoqia.leaf.installer.util.ArgumentParser;
+import dev.aoqia.leaf.installer.util.Bundle;
+import dev.aoqia.leaf.installer.util.InstallManifest;
 import dev.aoqia.leaf.installer.util.InstallerProgress;
+import dev.aoqia.leaf.installer.util.JvmProfile;
+import dev.aoqia.leaf.installer.util.LibraryDownloader;
 import dev.aoqia.leaf.installer.util.OperatingSystem;
+import dev.aoqia.leaf.installer.util.Reference;
+import dev.aoqia.leaf.installer.util.SteamLibraries;
 import dev.aoqia.leaf.installer.util.Utils;
+import dev.aoqia.leaf.installer.util.json.InstallState;
 
 import javax.swing.*;
 
@@ -68,6 +79,12 @@ public class ServerHandler extends Handler {
     @Override
     public void installCli(ArgumentParser args) throws Exception {
         final var os = OperatingSystem.CURRENT.toShortString();
+
+        if (args.has("dirs") || args.has("steam")) {
+            installFleetCli(args);
+            return;
+        }
+
         Path dir = Paths.get(args.getOrDefault("dir", () -> ".")).toAbsolutePath().normalize();
 
         if (!Files.isDirectory(dir)) {
@@ -75,20 +92,99 @@ public class ServerHandler extends Handler {
                 "Server directory not found at " + dir + " or not a directory");
         }
 
-        LoaderVersion loaderVersion = new LoaderVersion(getLoaderVersion(args));
-        String gameVersion = getGameVersion(args);
-        //ServerInstaller.install(dir, gameVersion, loaderVersion, InstallerProgress.CONSOLE);
+        String bundlePath = args.get("bundle");
+        if (bundlePath != null) {
+            try (Bundle bundle = Bundle.open(bundlePath)) {
+                String gameVersion = args.getOrDefault("gameVersion", bundle::getGameVersion);
+                new ServerInstaller(dir, gameVersion, bundle, InstallerProgress.CONSOLE).install(false);
+            }
+        } else {
+            LoaderVersion loaderVersion = new LoaderVersion(getLoaderVersion(args, dir));
+            String gameVersion = getGameVersion(args, dir);
+            new ServerInstaller(dir, gameVersion, loaderVersion, InstallerProgress.CONSOLE).install(false);
+        }
 
         InstallerProgress.CONSOLE.updateProgress(
             new MessageFormat(Utils.BUNDLE.getString("progress.done.start.server." + os)).format(
                 null));
     }
 
+    /**
+     * Install into every directory of -dirs and every dedicated server found in the -steam libraries.
+     */
+    private void installFleetCli(ArgumentParser args) throws Exception {
+        final var dirs = new TreeSet<Path>();
+        if (args.get("dirs") != null) {
+            dirs.addAll(ServerFleetInstaller.findDirectories(args.get("dirs")));
+        }
+        if (args.has("steam")) {
+            final var steamRoot = args.get("steam") != null ? Path.of(args.get("steam"))
+                : Utils.getDefaultSteamLibraryPath();
+            dirs.addAll(SteamLibraries.findGame(steamRoot, Reference.SERVER_GAME_FOLDER));
+        }
+
+        if (dirs.isEmpty()) {
+            throw new FileNotFoundException("No server directories found");
+        }
+
+        // Every server in the batch runs on this host, so each gets its share unless told otherwise.
+        if (!args.has("jvmservers")) {
+            JvmProfile.setServers(dirs.size());
+        }
+
+        final List<ServerFleetInstaller.Result> results;
+        String bundlePath = args.get("bundle");
+        if (bundlePath != null) {
+            try (Bundle bundle = Bundle.open(bundlePath)) {
+                String gameVersion = args.getOrDefault("gameVersion", bundle::getGameVersion);
+                results = new ServerFleetInstaller(List.copyOf(dirs),
+                    (dir, progress) -> new ServerInstaller(dir, gameVersion, bundle, progress),
+                    InstallerProgress.CONSOLE).install(false);
+            }
+        } else {
+            LoaderVersion loaderVersion = new LoaderVersion(getLoaderVersion(args, dirs.first()));
+            String gameVersion = getGameVersion(args, dirs.first());
+            results = new ServerFleetInstaller(List.copyOf(dirs),
+                (dir, progress) -> new ServerInstaller(dir, gameVersion, loaderVersion, progress),
+                InstallerProgress.CONSOLE).install(false);
+        }
+
+        ServerFleetInstaller.printSummary(results, InstallerProgress.CONSOLE);
+
+        if (results.stream().anyMatch(result -> result.status() == ServerFleetInstaller.Status.FAILED)) {
+            throw new IOException("Failed to install into some server directories");
+        }
+    }
+
+    @Override
+    public boolean verifyCli(ArgumentParser args, boolean repair) throws Exception {
+        Path dir = Paths.get(args.getOrDefault("dir", () -> ".")).toAbsolutePath().normalize();
+        InstallState state = InstallManifest.read(dir);
+        LoaderVersion loaderVersion = new LoaderVersion(getInstalledLoaderVersion(args, dir));
+        String gameVersion = args.getOrDefault("gameVersion", () -> state != null ? state.gameVersion() : null);
+        checkInstallState(dir, state, "server", loaderVersion.name, gameVersion);
+
+        return verify(new ServerInstaller(dir, gameVersion, loaderVersion, InstallerProgress.CONSOLE)
+            .createVerifier(), repair, args.has("deleteextra"));
+    }
+
     @Override
     public String cliHelp() {
         return "-dir <install dir> -- (default: current dir) " +
+               "-dirs <install dirs separated by " + File.pathSeparator + ", each may be a glob such as " +
+               "/srv/zomboid/*> -- (install into every matching directory instead of -dir) " +
+               "-steam [steam root] -- (also install into every dedicated server in its libraries, " +
+               "default: the Steam install) " +
                "-pzversion <zomboid version> -- (default: latest) " +
-               "-loader <loader version> -- (default: latest)";
+               "-loader <loader version> -- (default: latest) " +
+               "-threads <concurrent downloads> -- (default: " + LibraryDownloader.DEFAULT_THREADS + ") " +
+               "-hostconnections <concurrent downloads per host> -- (default: " +
+               LibraryDownloader.DEFAULT_CONNECTIONS_PER_HOST + ") " +
+               "-bundle <offline bundle to install from, - for stdin> " +
+               "-compactclasspath -- (pass the launch script classpath in an argument file) " +
+               "-appcds -- (create a class data sharing archive to speed up server boot) " +
+               "-jvmprofile -- (size the heap, GC and GC threads for this machine instead of the stock args) " +
+               "-jvmservers <count> -- (servers sharing this machine for -jvmprofile, default: 1, or the -dirs count)";
     }
 
     @Override
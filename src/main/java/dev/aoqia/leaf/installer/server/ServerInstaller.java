@@ -19,32 +19,59 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.MessageFormat;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
 
 import org.apache.commons.collections4.iterators.IteratorChain;
 
 import dev.aoqia.leaf.installer.LoaderVersion;
+import dev.aoqia.leaf.installer.util.ArtifactCache;
+import dev.aoqia.leaf.installer.util.Bundle;
+import dev.aoqia.leaf.installer.util.InstallManifest;
 import dev.aoqia.leaf.installer.util.InstallerProgress;
+import dev.aoqia.leaf.installer.util.JarInspector;
 import dev.aoqia.leaf.installer.util.LaunchConfigUtil;
 import dev.aoqia.leaf.installer.util.LeafService;
 import dev.aoqia.leaf.installer.util.Library;
+import dev.aoqia.leaf.installer.util.LibraryDownloader;
+import dev.aoqia.leaf.installer.util.LibraryVerifier;
 import dev.aoqia.leaf.installer.util.Reference;
 import dev.aoqia.leaf.installer.util.Utils;
+import dev.aoqia.leaf.installer.util.json.InstallState;
 import dev.aoqia.leaf.installer.util.json.LoaderJson;
 
 public class ServerInstaller {
+    private static final String SIDE = "server";
+
     private final Path gameDir;
     private final String gameVersion;
     private final Path libsDir;
     private final LoaderVersion loaderVersion;
     private final InstallerProgress progress;
+    private final Bundle bundle;
+    private LoaderJson loaderJson;
+    private Path staging;
 
     public ServerInstaller(Path gameDir, String gameVersion, LoaderVersion loaderVersion, InstallerProgress progress) {
         this.gameDir = gameDir;
         this.gameVersion = gameVersion;
         this.loaderVersion = loaderVersion;
         this.progress = progress;
+        this.bundle = null;
+
+        this.libsDir = gameDir.resolve(Utils.LEAF_FOLDER).resolve("libraries");
+    }
+
+    /**
+     * Install the loader contained in an offline bundle, without any network access.
+     */
+    public ServerInstaller(Path gameDir, String gameVersion, Bundle bundle, InstallerProgress progress) {
+        this.gameDir = gameDir;
+        this.gameVersion = gameVersion;
+        this.loaderVersion = new LoaderVersion(bundle.getLoaderVersion());
+        this.progress = progress;
+        this.bundle = bundle;
 
         this.libsDir = gameDir.resolve(Utils.LEAF_FOLDER).resolve("libraries");
     }
@@ -57,54 +84,141 @@ public class ServerInstaller {
 
         final var configName = String.format("leaf-%s-%s", loaderVersion.name, gameVersion);
 
-        LoaderJson loaderVersionJson;
-        if (loaderVersion.path == null) {
-            // Loader jar isn't custom, fetch json from GitHub.
-            loaderVersionJson = LeafService.queryMetaJson("loader/%s.json".formatted(loaderVersion.name),
-                LoaderJson.class);
+        InstallState state = InstallManifest.read(gameDir);
+        String mainClass;
+
+        if (isUpToDate(state)) {
+            progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.install.unchanged")).format(
+                new Object[] { loaderVersion.name }));
+            mainClass = state.mainClass();
         } else {
-            // Loader jar is locally available, fetch json from Jar.
-            // Do this to prevent large GitHub traffic for dedicated servers.
-            try (ZipFile zf = new ZipFile(loaderVersion.path.toFile())) {
-                ZipEntry entry = zf.getEntry("leaf-installer.json");
-                loaderVersionJson = Utils.deserializeJson(zf.getInputStream(entry), LoaderJson.class);
+            LoaderJson loaderVersionJson = getLoaderJson();
+            mainClass = loaderVersionJson.mainClass().server();
+            Files.createDirectories(libsDir);
+
+            final var manifest = new InstallManifest(gameDir, state, SIDE, loaderVersion.name, gameVersion, mainClass);
+            final var downloader = new LibraryDownloader(progress, bundle);
+            final var staged = new ArrayList<Path>();
+            forEachLibrary(loaderVersionJson, (json, target) -> {
+                if (manifest.add(json, target)) {
+                    progress.updateProgress(new MessageFormat(
+                        Utils.BUNDLE.getString("progress.download.library.unchanged")).format(
+                        new Object[] { json.name() }));
+                } else if (staging != null) {
+                    staged.add(target);
+                } else {
+                    downloader.add(json, target);
+                }
+            });
+            downloader.download();
+
+            // Staged libraries were verified when they were fetched, so placing them is only a hardlink each.
+            for (int i = 0; i < staged.size(); i++) {
+                final Path target = staged.get(i);
+                ArtifactCache.place(staging.resolve(target.getFileName()), target);
+                progress.updateProgress(new MessageFormat(
+                    Utils.BUNDLE.getString("progress.download.library.staged")).format(
+                    new Object[] { target.getFileName(), i + 1, staged.size() }));
             }
+
+            state = manifest.commit(progress);
         }
 
-        LoaderJson.Libraries libsJson = loaderVersionJson.libraries();
-        String mainClass = loaderVersionJson.mainClass().server();
         String mainClassInternal = mainClass.replace(".", "/");
-        Files.createDirectories(libsDir);
+        final var launchConfigUtil = new LaunchConfigUtil(gameDir, state);
+        if (createConfig) {
+            launchConfigUtil.createConfig(configName, mainClassInternal);
+        }
+        launchConfigUtil.createScript(configName, mainClass);
 
-        // Putting the loader itself into the libs list to download/copy later.
-        libsJson
-            .common()
-            .add(new LoaderJson.Library("dev.aoqia.leaf:loader:" + loaderVersion.name,
-                loaderVersion.path != null ? loaderVersion.path.toUri().toString() : Reference.DEFAULT_MAVEN_SERVER,
-                null, null, null, null, null));
+        progress.updateProgress(Utils.BUNDLE.getString("progress.done"));
+    }
 
-        final var libs = new IteratorChain<>(libsJson.common().iterator(), libsJson.server().iterator());
-        libs.forEachRemaining(json -> {
-            Library library = new Library(json);
-            Path libraryFile = libsDir.resolve("%s-%s.jar".formatted(library.artifactId, library.version));
+    /**
+     * Whether the install already matches the requested loader and game version, without touching the network.
+     */
+    public boolean isUpToDate() {
+        return isUpToDate(InstallManifest.read(gameDir));
+    }
 
-            progress.updateProgress(
-                new MessageFormat(Utils.BUNDLE.getString("progress.download.library.entry")).format(
-                    new Object[] { library.dependency }));
+    /**
+     * Whether the loader comes from an offline bundle. A bundle can only be read through once, so nothing can fall
+     * back to reading it again after a failed attempt.
+     */
+    public boolean usesBundle() {
+        return bundle != null;
+    }
 
-            try {
-                LeafService.downloadSubstitutedMaven(library.getURL(), libraryFile);
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to download library %s".formatted(library.artifactId), e);
-            }
-        });
+    /**
+     * Resolve the loader json and fetch every library into staging, for a batch install of many directories.
+     * See {@link #useStaging(ServerInstaller, Path)}.
+     */
+    void prefetch(Path staging) throws IOException {
+        final var downloader = new LibraryDownloader(progress, bundle);
+        forEachLibrary(getLoaderJson(), (json, target) -> downloader.add(json, staging.resolve(target.getFileName())));
+        downloader.download();
+    }
 
-        final var launchConfigUtil = new LaunchConfigUtil(gameDir);
-        if (createConfig) {
-            launchConfigUtil.createConfig(configName, mainClassInternal);
+    /**
+     * Install from the loader json and libraries that source prefetched, instead of resolving them again.
+     */
+    void useStaging(ServerInstaller source, Path staging) throws IOException {
+        this.loaderJson = source.getLoaderJson();
+        this.staging = staging;
+    }
+
+    /**
+     * A verifier for the libraries this install is expected to contain, see {@link LibraryVerifier}.
+     */
+    public LibraryVerifier createVerifier() throws IOException {
+        final var state = InstallManifest.read(gameDir);
+        final var verifier = new LibraryVerifier(libsDir,
+            state != null ? InstallManifest.getLibraries(gameDir, state) : List.of());
+        forEachLibrary(getLoaderJson(), verifier::add);
+        return verifier;
+    }
+
+    private boolean isUpToDate(InstallState state) {
+        // A custom loader jar can change without its version changing, so it is always installed again.
+        return loaderVersion.path == null
+            && InstallManifest.isUpToDate(gameDir, state, SIDE, loaderVersion.name, gameVersion);
+    }
+
+    private LoaderJson getLoaderJson() throws IOException {
+        if (loaderJson == null) {
+            loaderJson = readLoaderJson();
         }
-        launchConfigUtil.createScript(configName, mainClass);
 
-        progress.updateProgress(Utils.BUNDLE.getString("progress.done"));
+        return loaderJson;
+    }
+
+    private LoaderJson readLoaderJson() throws IOException {
+        if (bundle != null) {
+            return bundle.getLoaderJson();
+        } else if (loaderVersion.path == null) {
+            // Loader jar isn't custom, fetch json from GitHub.
+            return LeafService.queryMetaJson("loader/%s.json".formatted(loaderVersion.name), LoaderJson.class);
+        }
+
+        // Loader jar is locally available, fetch json from Jar.
+        // Do this to prevent large GitHub traffic for dedicated servers.
+        final byte[] json = JarInspector.inspect(loaderVersion.path).getDescriptor(JarInspector.INSTALLER_JSON);
+        return Utils.deserializeJson(json, LoaderJson.class);
+    }
+
+    private void forEachLibrary(LoaderJson loaderJson, BiConsumer<LoaderJson.Library, Path> consumer) {
+        LoaderJson.Libraries libsJson = loaderJson.libraries();
+
+        // The loader itself is installed like any other library, after the common ones.
+        final var loader = new LoaderJson.Library("dev.aoqia.leaf:loader:" + loaderVersion.name,
+            loaderVersion.path != null ? loaderVersion.path.toUri().toString() : Reference.DEFAULT_MAVEN_SERVER,
+            null, null, null, null, null);
+
+        final var libs = new IteratorChain<>(libsJson.common().iterator(), List.of(loader).iterator(),
+            libsJson.server().iterator());
+        libs.forEachRemaining(json -> {
+            Library library = new Library(json);
+            consumer.accept(json, libsDir.resolve("%s-%s.jar".formatted(library.artifactId, library.version)));
+        });
     }
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trains an AppCDS archive of the loader and its libraries with the game's own JRE, so a server spends less of its
+ * boot loading and verifying classes.
+ *
+ * <p>The archive is dumped statically from a list of every class in the libraries, which doesn't require running the
+ * server. It is only valid for the exact JVM and classpath it was dumped with, so it is stored with a fingerprint of
+ * both and dumped again whenever that changes. The leaf libraries have to be the start of the runtime classpath, as
+ * the JVM only maps an archive whose classpath is a prefix of its own. The JVM ignores an archive that doesn't match,
+ * so a stale one costs boot time but never breaks a launch.
+ */
+public final class AppCds {
+    public static final String ARCHIVE_OPTION = "-XX:SharedArchiveFile=";
+
+    private static final long DUMP_TIMEOUT_MINUTES = 10;
+
+    private static volatile boolean enabled;
+
+    private AppCds() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    /**
+     * The java executable of the JRE bundled with the game, which the launch scripts use.
+     */
+    public static Path findJava(Path gameDir) {
+        final Path bin = gameDir.resolve("jre64").resolve("bin");
+        final Path java = bin.resolve(OperatingSystem.CURRENT == OperatingSystem.WINDOWS ? "java.exe" : "java");
+        return Files.isRegularFile(java) ? java : null;
+    }
+
+    /**
+     * Make sure the archive for a classpath exists and is current, dumping a new one if not.
+     * Failing to dump an archive is never fatal to an install.
+     *
+     * @param classpath the leaf part of the launch classpath, relative to gameDir
+     * @param libraries the libraries whose classes go into the archive
+     * @return the archive, or null if there is none
+     */
+    public static Path update(Path gameDir, String name, List<Path> classpath, List<Path> libraries) {
+        final Path java = findJava(gameDir);
+        if (java == null) {
+            System.err.println("Not creating a class data sharing archive, the game's JRE wasn't found");
+            return null;
+        }
+
+        final Path dir = gameDir.resolve(Utils.LEAF_FOLDER);
+        final Path archive = dir.resolve(name + ".jsa");
+        final Path fingerprintFile = dir.resolve(name + ".jsa.sha1");
+
+        try {
+            final String fingerprint = getFingerprint(java, classpath, libraries);
+
+            if (Files.isRegularFile(archive) && Files.isRegularFile(fingerprintFile)
+                && fingerprint.equals(Files.readString(fingerprintFile).trim())) {
+                return archive;
+            }
+
+            System.out.println("Creating class data sharing archive " + gameDir.relativize(archive));
+            Files.deleteIfExists(fingerprintFile);
+
+            if (!dump(gameDir, java, archive, classpath, libraries)) {
+                Files.deleteIfExists(archive);
+                return null;
+            }
+
+            Files.writeString(fingerprintFile, fingerprint);
+            return archive;
+        } catch (IOException e) {
+            System.err.println("Failed to create class data sharing archive: " + e);
+            return null;
+        }
+    }
+
+    private static boolean dump(Path gameDir, Path java, Path archive, List<Path> classpath, List<Path> libraries)
+        throws IOException {
+        final Path classList = archive.resolveSibling(archive.getFileName() + ".classlist");
+        final Path log = archive.resolveSibling(archive.getFileName() + ".log");
+        final Path temp = archive.resolveSibling(archive.getFileName() + ".tmp");
+
+        writeClassList(classList, libraries);
+
+        final Process process = new ProcessBuilder(java.toAbsolutePath().toString(), "-Xshare:dump",
+            "-XX:SharedClassListFile=" + classList.toAbsolutePath(), ARCHIVE_OPTION + temp.toAbsolutePath(),
+            "-cp", join(classpath))
+            .directory(gameDir.toFile())
+            .redirectErrorStream(true)
+            .redirectOutput(log.toFile())
+            .start();
+
+        try {
+            if (!process.waitFor(DUMP_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                process.destroyForcibly();
+                System.err.println("Timed out creating class data sharing archive, see " + log);
+                return false;
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Class data sharing archive creation interrupted");
+        }
+
+        try {
+            if (process.exitValue() != 0 || !Files.isRegularFile(temp)) {
+                System.err.printf("Failed to create class data sharing archive (exit code %d), see %s%n",
+                    process.exitValue(), log);
+                return false;
+            }
+
+            // Dumped archives are read only, which stops Windows from replacing an old one.
+            if (Files.exists(archive)) {
+                archive.toFile().setWritable(true);
+            }
+
+            Utils.moveAtomically(temp, archive);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        return true;
+    }
+
+    /**
+     * List every class of the libraries, in the internal form the JVM expects. Classes that fail to load at dump
+     * time, such as ones with missing optional dependencies, are skipped by the JVM.
+     */
+    private static void writeClassList(Path classList, List<Path> libraries) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(classList, StandardCharsets.UTF_8)) {
+            for (Path library : libraries) {
+                try {
+                    for (String name : JarInspector.inspect(library).classes()) {
+                        writer.write(name);
+                        writer.newLine();
+                    }
+                } catch (IOException e) {
+                    System.err.println("Skipping unreadable library " + library + ": " + e);
+                }
+            }
+        }
+    }
+
+    private static String getFingerprint(Path java, List<Path> classpath, List<Path> libraries) throws IOException {
+        final StringBuilder builder = new StringBuilder();
+
+        // The JVM and every jar are identified by size and modification time, like the install state does.
+        appendFile(builder, java);
+        for (Path library : libraries) {
+            appendFile(builder, library);
+        }
+        builder.append(join(classpath)).append('\n');
+
+        final MessageDigest digest = Checksum.Algorithm.SHA1.newDigest();
+        return Utils.bytesToHex(digest.digest(builder.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void appendFile(StringBuilder builder, Path path) throws IOException {
+        builder.append(path.toAbsolutePath().normalize()).append('\t')
+            .append(Files.size(path)).append('\t')
+            .append(Files.getLastModifiedTime(path).toMillis()).append('\n');
+    }
+
+    private static String join(List<Path> classpath) {
+        final StringBuilder builder = new StringBuilder();
+
+        for (Path path : classpath) {
+            if (!builder.isEmpty()) {
+                builder.append(File.pathSeparatorChar);
+            }
+
+            builder.append(path);
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+import dev.aoqia.leaf.installer.util.json.LoaderJson;
+
+/**
+ * A user level, content addressed store of downloaded artifacts shared by every game directory on the machine.
+ * Entries are keyed by the sha256 and sha1 hashes from the loader json, falling back to the maven coordinates
+ * when no hash is known. Installs are placed into a libraries folder by hardlinking the cached file, or copying it
+ * when the cache lives on a different file system.
+ */
+public final class ArtifactCache {
+    private static volatile Path directory = getDefaultDirectory();
+    private static volatile boolean enabled = true;
+
+    private ArtifactCache() {
+    }
+
+    public static Path getDefaultDirectory() {
+        var path = System.getenv("LEAF_CACHE_PATH");
+        if (path != null) {
+            return Path.of(path);
+        }
+
+        return Path.of(System.getProperty("user.home"), Utils.LEAF_FOLDER, "cache");
+    }
+
+    public static Path getDirectory() {
+        return directory;
+    }
+
+    public static void setDirectory(Path path) {
+        directory = path;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    /**
+     * Find a cached copy of a library, checking the hash keys before the maven coordinates.
+     */
+    public static Optional<Path> find(LoaderJson.Library json) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        final Checksum checksum = Checksum.strongest(json);
+
+        for (Path key : getKeys(json)) {
+            if (!Files.isRegularFile(key)) {
+                continue;
+            }
+
+            try {
+                if (json.size() != null && Files.size(key) != json.size()) {
+                    continue;
+                }
+
+                // Entries are hardlinked into game folders, so make sure nothing modified one in place.
+                if (checksum != null && !checksum.matches(key)) {
+                    System.err.println("Discarding corrupt cache entry " + key);
+                    Files.deleteIfExists(key);
+                    continue;
+                }
+            } catch (IOException e) {
+                continue;
+            }
+
+            return Optional.of(key);
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * Add a downloaded library to the cache under every key it is known by.
+     * Failing to populate the cache is never fatal to an install.
+     */
+    public static void store(LoaderJson.Library json, Path file) {
+        if (!enabled) {
+            return;
+        }
+
+        for (Path key : getKeys(json)) {
+            try {
+                if (Files.notExists(key)) {
+                    Files.createDirectories(key.getParent());
+                    place(file, key);
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to cache library " + json.name() + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Link or copy a file into place, replacing whatever exists at the target.
+     * The target is staged next to its final location and moved in, so readers never see a partial file.
+     */
+    public static void place(Path source, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        final Path temp = Utils.tempSibling(target);
+
+        try {
+            try {
+                Files.createLink(temp, source);
+            } catch (UnsupportedOperationException | IOException e) {
+                // Different file system, or links aren't supported at all.
+                Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            Utils.moveAtomically(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static List<Path> getKeys(LoaderJson.Library json) {
+        final List<Path> keys = new ArrayList<>(3);
+        final Path dir = directory;
+
+        // Local jars (such as a custom loader) must never shadow the real artifact.
+        if (json.url() != null && json.url().startsWith("file:")) {
+            return keys;
+        }
+
+        addHashKey(keys, dir, Checksum.Algorithm.SHA256, json.sha256());
+        addHashKey(keys, dir, Checksum.Algorithm.SHA1, json.sha1());
+
+        keys.add(dir.resolve("maven").resolve(new Library(json).getPath()));
+        return keys;
+    }
+
+    /**
+     * The hash comes from remote json and becomes part of a path, so anything but hex of the right length is skipped.
+     */
+    private static void addHashKey(List<Path> keys, Path dir, Checksum.Algorithm algorithm, String hash) {
+        if (hash == null) {
+            return;
+        }
+
+        final String hex = hash.toLowerCase(Locale.ROOT);
+        if (new Checksum(algorithm, hex).isWellFormed()) {
+            keys.add(dir.resolve(algorithm.name().toLowerCase(Locale.ROOT)).resolve(hex.substring(0, 2)).resolve(hex));
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.util;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import dev.aoqia.leaf.installer.util.json.BundleIndex;
+import dev.aoqia.leaf.installer.util.json.LoaderJson;
+
+/**
+ * An offline install bundle: a loader json and every library it needs in a single zip, so a fleet of machines can be
+ * provisioned from one download without any network access.
+ *
+ * <p>The index (with the hash of every library) and the loader json are the first two entries, followed by the
+ * libraries stored uncompressed. That makes a bundle readable front to back in a single pass, so it can be installed
+ * straight from a pipe or a file without being extracted to a temporary directory first.
+ */
+public final class Bundle implements Closeable {
+    public static final String INDEX_ENTRY = "leaf-bundle.json";
+    public static final String LOADER_ENTRY = "loader.json";
+    private static final String LIBRARIES_PREFIX = "libraries/";
+    private static final int FORMAT_VERSION = 1;
+
+    private final ZipInputStream in;
+    private final BundleIndex index;
+    private final LoaderJson loaderJson;
+    private boolean extracted;
+
+    private Bundle(ZipInputStream in) throws IOException {
+        this.in = in;
+
+        ZipEntry entry = in.getNextEntry();
+        if (entry == null || !entry.getName().equals(INDEX_ENTRY)) {
+            throw new IOException("Not a leaf bundle, expected " + INDEX_ENTRY + " as the first entry");
+        }
+
+        this.index = Utils.deserializeJson(Utils.readBytes(in, entry.getSize()), BundleIndex.class);
+        if (index.version() != FORMAT_VERSION) {
+            throw new IOException("Unsupported bundle version " + index.version());
+        }
+
+        entry = in.getNextEntry();
+        if (entry == null || !entry.getName().equals(LOADER_ENTRY)) {
+            throw new IOException("Invalid leaf bundle, expected " + LOADER_ENTRY + " after the index");
+        }
+
+        this.loaderJson = Utils.deserializeJson(Utils.readBytes(in, entry.getSize()), LoaderJson.class);
+    }
+
+    /**
+     * Open a bundle file for reading, or standard input if source is {@code -}.
+     */
+    public static Bundle open(String source) throws IOException {
+        final InputStream is = source.equals("-") ? System.in : Files.newInputStream(Path.of(source));
+
+        try {
+            return new Bundle(new ZipInputStream(new BufferedInputStream(is, 64 * 1024)));
+        } catch (IOException | RuntimeException e) {
+            is.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Resolve a loader version and download it with all of its client and server libraries into a new bundle.
+     */
+    public static void create(Path file, String loaderVersion, String gameVersion, InstallerProgress progress)
+        throws IOException {
+        final LoaderJson loaderJson = LeafService.queryMetaJson("loader/%s.json".formatted(loaderVersion),
+            LoaderJson.class);
+        final LoaderJson.Libraries libsJson = loaderJson.libraries();
+
+        final List<LoaderJson.Library> libraries = new ArrayList<>();
+        libraries.addAll(libsJson.common());
+        libraries.addAll(libsJson.client());
+        libraries.addAll(libsJson.server());
+        libraries.add(new LoaderJson.Library("dev.aoqia.leaf:loader:" + loaderVersion, Reference.DEFAULT_MAVEN_SERVER,
+            null, null, null, null, null));
+
+        final Path staging = Files.createTempDirectory("leaf-bundle");
+
+        try {
+            // Downloaded through the artifact cache, so bundling an already installed version is mostly hardlinks.
+            final Map<String, Path> files = new LinkedHashMap<>();
+            final var downloader = new LibraryDownloader(progress);
+
+            for (LoaderJson.Library json : libraries) {
+                if (!files.containsKey(json.name())) {
+                    Path path = staging.resolve(new Library(json).getPath());
+                    files.put(json.name(), path);
+                    downloader.add(json, path);
+                }
+            }
+
+            downloader.download();
+
+            // The index has to come first for a bundle to be streamable, so hash everything before writing anything.
+            final List<BundleIndex.Library> entries = new ArrayList<>();
+            final Map<String, Long> crcs = new HashMap<>();
+
+            for (Map.Entry<String, Path> entry : files.entrySet()) {
+                final MessageDigest digest = Checksum.Algorithm.SHA256.newDigest();
+                final CRC32 crc = new CRC32();
+                final String path = LIBRARIES_PREFIX
+                    + new Library(entry.getKey(), null).getPath().replace(File.separatorChar, '/');
+
+                try (InputStream is = Files.newInputStream(entry.getValue())) {
+                    byte[] buffer = new byte[64 * 1024];
+                    int len;
+
+                    while ((len = is.read(buffer)) >= 0) {
+                        digest.update(buffer, 0, len);
+                        crc.update(buffer, 0, len);
+                    }
+                }
+
+                entries.add(new BundleIndex.Library(entry.getKey(), path, Files.size(entry.getValue()),
+                    Utils.bytesToHex(digest.digest())));
+                crcs.put(path, crc.getValue());
+            }
+
+            Utils.writeAtomically(file, os -> {
+                try (ZipOutputStream out = new ZipOutputStream(os)) {
+                    out.putNextEntry(new ZipEntry(INDEX_ENTRY));
+                    Utils.serializeJson(new BundleIndex(FORMAT_VERSION, loaderVersion, gameVersion, entries), out);
+                    out.closeEntry();
+
+                    out.putNextEntry(new ZipEntry(LOADER_ENTRY));
+                    Utils.serializeJson(loaderJson, out);
+                    out.closeEntry();
+
+                    for (BundleIndex.Library library : entries) {
+                        // Jars are compressed already, storing them keeps reading a bundle a plain copy.
+                        final ZipEntry zipEntry = new ZipEntry(library.path());
+                        zipEntry.setMethod(ZipEntry.STORED);
+                        zipEntry.setSize(library.size());
+                        zipEntry.setCompressedSize(library.size());
+                        zipEntry.setCrc(crcs.get(library.path()));
+
+                        out.putNextEntry(zipEntry);
+                        Files.copy(files.get(library.name()), out);
+                        out.closeEntry();
+                    }
+                }
+            });
+        } finally {
+            deleteRecursively(staging);
+        }
+    }
+
+    public String getLoaderVersion() {
+        return index.loader();
+    }
+
+    public String getGameVersion() {
+        return index.gameVersion();
+    }
+
+    public LoaderJson getLoaderJson() {
+        return loaderJson;
+    }
+
+    /**
+     * Extract libraries by name to their target paths, verifying each against the index.
+     * The bundle is read in a single pass, so this can only be called once.
+     */
+    public void extract(Map<String, Path> targets, Consumer<String> listener) throws IOException {
+        if (extracted) {
+            throw new IllegalStateException("Bundle has already been extracted");
+        }
+
+        extracted = true;
+
+        final Map<String, BundleIndex.Library> byPath = new HashMap<>();
+        for (BundleIndex.Library library : index.libraries()) {
+            byPath.put(library.path(), library);
+        }
+
+        final Map<String, Path> remaining = new HashMap<>(targets);
+        ZipEntry entry;
+
+        while (!remaining.isEmpty() && (entry = in.getNextEntry()) != null) {
+            final BundleIndex.Library library = byPath.get(entry.getName());
+            final Path target = library != null ? remaining.remove(library.name()) : null;
+
+            if (target != null) {
+                write(library, target);
+                listener.accept(library.name());
+            }
+        }
+
+        if (!remaining.isEmpty()) {
+            throw new IOException("Bundle is missing " + String.join(", ", remaining.keySet()));
+        }
+    }
+
+    private void write(BundleIndex.Library library, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+
+        final Path temp = Utils.tempSibling(target);
+        final DigestInputStream digestIn = new DigestInputStream(in, Checksum.Algorithm.SHA256.newDigest());
+
+        try {
+            // Don't close the entry stream, that would close the whole bundle.
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                digestIn.transferTo(out);
+            }
+
+            if (Files.size(temp) != library.size()
+                || !new Checksum(Checksum.Algorithm.SHA256, library.sha256()).matches(digestIn.getMessageDigest().digest())) {
+                throw new IOException("Bundle entry %s does not match its index".formatted(library.path()));
+            }
+
+            Utils.moveAtomically(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("Failed to delete " + dir + ": " + e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A pull-through cache of the meta server, Maven and the GitHub API, so a fleet of installers only downloads
+ * everything from upstream once. The server uses the same url layout as the upstreams under {@code /meta/},
+ * {@code /maven/} and {@code /github/}, point installers at it with {@code -metaurl}, {@code -mavenurl} and
+ * {@code -githuburl}.
+ *
+ * <p>Maven artifacts are immutable, so they are stored in the artifact cache on the first request, once they match
+ * the sha1 Maven publishes next to them, and served from disk from then on. Metadata changes, and goes through the
+ * {@link MetaCache} with its usual revalidation instead.
+ */
+public final class CacheServer {
+    public static final int DEFAULT_PORT = 8080;
+
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int HTTP_BAD_METHOD = 405;
+    private static final int HTTP_BAD_GATEWAY = 502;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Path mavenDir;
+    // Concurrent misses for the same artifact share a single upstream download, and its outcome.
+    private final Map<Path, CompletableFuture<Void>> downloads = new ConcurrentHashMap<>();
+
+    public CacheServer(InetSocketAddress address) throws IOException {
+        this.server = HttpServer.create(address, 0);
+        this.executor = Executors.newCachedThreadPool(r -> new Thread(r, "Cache Server"));
+        this.mavenDir = ArtifactCache.getDirectory().resolve("maven");
+
+        server.setExecutor(executor);
+        server.createContext("/meta/", exchange -> handle(exchange, Route.META));
+        server.createContext("/maven/", exchange -> handle(exchange, Route.MAVEN));
+        server.createContext("/github/", exchange -> handle(exchange, Route.GITHUB));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handle(HttpExchange exchange, Route route) throws IOException {
+        try (exchange) {
+            final String method = exchange.getRequestMethod();
+            final boolean head = method.equals("HEAD");
+
+            if (!head && !method.equals("GET")) {
+                exchange.sendResponseHeaders(HTTP_BAD_METHOD, -1);
+                return;
+            }
+
+            final String path = exchange.getRequestURI().getRawPath().substring(route.prefix.length());
+            final Path file = mavenDir.resolve(path).normalize();
+
+            // Never let a request escape the cache directory.
+            if (path.isEmpty() || path.contains("..") || path.contains("\\") || !file.startsWith(mavenDir)) {
+                exchange.sendResponseHeaders(HTTP_NOT_FOUND, -1);
+                return;
+            }
+
+            final URI upstream = URI.create(route.upstream + path);
+
+            try {
+                if (route == Route.MAVEN && !path.contains("maven-metadata")) {
+                    final boolean hit = Files.isRegularFile(file);
+                    if (!hit) {
+                        fetch(upstream, file);
+                    }
+
+                    System.out.printf("%s %s%s (%s)%n", method, route.prefix, path, hit ? "hit" : "miss");
+                    sendFile(exchange, file, head);
+                } else {
+                    final byte[] body = MetaCache.read(upstream.toURL());
+
+                    System.out.printf("%s %s%s%n", method, route.prefix, path);
+                    exchange.getResponseHeaders().set("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(HTTP_OK, head ? -1 : body.length);
+                    if (!head) {
+                        exchange.getResponseBody().write(body);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.printf("Failed to fetch %s: %s%n", upstream, e.getMessage());
+                exchange.sendResponseHeaders(HTTP_BAD_GATEWAY, -1);
+            }
+        }
+    }
+
+    private void fetch(URI upstream, Path file) throws IOException {
+        final CompletableFuture<Void> download = new CompletableFuture<>();
+        final CompletableFuture<Void> running = downloads.putIfAbsent(file, download);
+        if (running != null) {
+            HttpClient.join(running);
+            return;
+        }
+
+        try {
+            // The previous download may have finished between the caller's check and claiming this one.
+            if (!Files.isRegularFile(file)) {
+                HttpClient.downloadFile(upstream.toURL(), file, null, getChecksum(upstream));
+            }
+
+            download.complete(null);
+        } catch (IOException | RuntimeException e) {
+            download.completeExceptionally(e);
+            throw e;
+        } finally {
+            downloads.remove(file, download);
+        }
+    }
+
+    /**
+     * The sha1 Maven publishes next to an artifact, so a truncated or corrupt upstream body is never cached and
+     * served to every installer. Checksum and signature files themselves have nothing to be checked against.
+     */
+    private static Checksum getChecksum(URI upstream) throws IOException {
+        final String path = upstream.getPath();
+        if (path.endsWith(".sha1") || path.endsWith(".sha256") || path.endsWith(".sha512") || path.endsWith(".md5")
+            || path.endsWith(".asc")) {
+            return null;
+        }
+
+        final String body = HttpClient.readString(URI.create(upstream + ".sha1").toURL()).trim();
+        // Some repositories append the file name after the hash.
+        final int space = body.indexOf(' ');
+        final Checksum checksum = new Checksum(Checksum.Algorithm.SHA1, space >= 0 ? body.substring(0, space) : body);
+
+        if (!checksum.isWellFormed()) {
+            throw new IOException("Invalid sha1 for " + upstream);
+        }
+
+        return checksum;
+    }
+
+    private static void sendFile(HttpExchange exchange, Path file, boolean head) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            final long size = channel.size();
+
+            exchange.getResponseHeaders().set("Content-Type", "application/java-archive");
+
+            if (head) {
+                exchange.getResponseHeaders().set("Content-Length", Long.toString(size));
+                exchange.sendResponseHeaders(HTTP_OK, -1);
+                return;
+            }
+
+            exchange.sendResponseHeaders(HTTP_OK, size);
+
+            final OutputStream os = exchange.getResponseBody();
+            Channels.newInputStream(channel).transferTo(os);
+        }
+    }
+
+    private enum Route {
+        META("meta/", Reference.DEFAULT_META_SERVER),
+        MAVEN("maven/", Reference.DEFAULT_MAVEN_SERVER),
+        GITHUB("github/", Reference.GITHUB_API);
+
+        private final String prefix;
+        private final String upstream;
+
+        Route(String prefix, String upstream) {
+            this.prefix = "/" + prefix;
+            this.upstream = upstream;
+        }
+    }
+}
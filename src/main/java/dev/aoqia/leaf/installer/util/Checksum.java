@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import dev.aoqia.leaf.installer.util.json.LoaderJson;
+
+/**
+ * An expected hash of a file, as published in the loader json.
+ */
+public record Checksum(Algorithm algorithm, String hash) {
+    /**
+     * Pick the strongest hash a library declares, or null if it declares none.
+     */
+    public static Checksum strongest(LoaderJson.Library json) {
+        if (isPresent(json.sha512())) {
+            return new Checksum(Algorithm.SHA512, json.sha512());
+        } else if (isPresent(json.sha256())) {
+            return new Checksum(Algorithm.SHA256, json.sha256());
+        } else if (isPresent(json.sha1())) {
+            return new Checksum(Algorithm.SHA1, json.sha1());
+        } else if (isPresent(json.md5())) {
+            return new Checksum(Algorithm.MD5, json.md5());
+        }
+
+        return null;
+    }
+
+    /**
+     * Every hash a library declares, strongest first. See {@link Hashing#verify(Path, Long, List)}.
+     */
+    public static List<Checksum> all(LoaderJson.Library json) {
+        final List<Checksum> checksums = new ArrayList<>(4);
+
+        if (isPresent(json.sha512())) {
+            checksums.add(new Checksum(Algorithm.SHA512, json.sha512()));
+        }
+        if (isPresent(json.sha256())) {
+            checksums.add(new Checksum(Algorithm.SHA256, json.sha256()));
+        }
+        if (isPresent(json.sha1())) {
+            checksums.add(new Checksum(Algorithm.SHA1, json.sha1()));
+        }
+        if (isPresent(json.md5())) {
+            checksums.add(new Checksum(Algorithm.MD5, json.md5()));
+        }
+
+        return checksums;
+    }
+
+    /**
+     * Check that an existing file has the expected size and hash, cheapest check first.
+     * A file without a known hash can't be proven valid and never matches.
+     */
+    public static boolean verify(Path path, Long size, Checksum checksum) throws IOException {
+        if (checksum == null || !Files.isRegularFile(path)) {
+            return false;
+        }
+
+        if (size != null && Files.size(path) != size) {
+            return false;
+        }
+
+        return checksum.matches(path);
+    }
+
+    private static boolean isPresent(String hash) {
+        return hash != null && !hash.isEmpty();
+    }
+
+    /**
+     * Whether the hash is hex of the length its algorithm produces, as opposed to anything a remote file could hold.
+     */
+    public boolean isWellFormed() {
+        if (hash == null || hash.length() != algorithm.length * 2) {
+            return false;
+        }
+
+        for (int i = 0; i < hash.length(); i++) {
+            final char c = hash.charAt(i);
+
+            // Character.digit would also accept non-ASCII digits
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F')) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public MessageDigest newDigest() {
+        return algorithm.newDigest();
+    }
+
+    public boolean matches(byte[] digest) {
+        return Utils.hexEquals(hash, digest);
+    }
+
+    public boolean matches(Path path) throws IOException {
+        return matches(Hashing.digest(path, algorithm)[0]);
+    }
+
+    @Override
+    public String toString() {
+        return algorithm.name().toLowerCase(Locale.ROOT) + ":" + hash;
+    }
+
+    public enum Algorithm {
+        MD5("MD5", 16), SHA1("SHA-1", 20), SHA256("SHA-256", 32), SHA512("SHA-512", 64);
+
+        private final String name;
+        private final int length;
+
+        Algorithm(String name, int length) {
+            this.name = name;
+            this.length = length;
+        }
+
+        public MessageDigest newDigest() {
+            try {
+                return MessageDigest.getInstance(name);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("Something has gone really wrong", e);
+            }
+        }
+    }
+}
@@ -15,24 +15,41 @@
  */
 package dev.aoqia.leaf.installer.util;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
+/**
+ * A value that becomes available later, such as loaded metadata. Safe to use from any thread, and consumers that
+ * subscribe after completion are called with the value straight away.
+ */
 public class CompletableHandler<T> {
-    private final List<Consumer<T>> completeConsumers = new ArrayList<>();
-    private boolean complete;
+    private final CompletableFuture<T> future = new CompletableFuture<>();
 
     public void onComplete(Consumer<T> completeConsumer) {
-        completeConsumers.add(completeConsumer);
+        future.thenAccept(value -> {
+            try {
+                completeConsumer.accept(value);
+            } catch (RuntimeException e) {
+                // Don't let the future swallow it.
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        });
     }
 
     protected void complete(T value) {
-        complete = true;
-        completeConsumers.forEach(listConsumer -> listConsumer.accept(value));
+        future.complete(value);
+    }
+
+    protected void completeExceptionally(Throwable t) {
+        future.completeExceptionally(t);
     }
 
     public boolean isComplete() {
-        return complete;
+        return future.isDone() && !future.isCompletedExceptionally();
+    }
+
+    public CompletableFuture<T> getFuture() {
+        return future;
     }
 }
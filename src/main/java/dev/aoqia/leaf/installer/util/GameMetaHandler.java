@@ -16,16 +16,13 @@
 package dev.aoqia.leaf.installer.util;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 import dev.aoqia.leaf.installer.util.json.GameManifestVersion;
 import dev.aoqia.leaf.installer.util.json.VersionTable;
 
 public class GameMetaHandler extends MetaHandler<GameMetaHandler.Version> {
-    private List<Version> versions;
+    private VersionCatalog<Version> versions;
 
     public GameMetaHandler(String metaPath) {
         super(metaPath);
@@ -34,42 +31,37 @@ public class GameMetaHandler extends MetaHandler<GameMetaHandler.Version> {
     @Override
     public void load() throws IOException {
         VersionTable versionTable = LeafService.queryMetaJson(getMetaPath(), VersionTable.class);
-        this.versions = versionTable.versions().keySet().stream().map(Version::new).toList();
-        complete(this.versions);
+        this.versions = new VersionCatalog<>(versionTable.versions().keySet().stream().map(Version::new).toList(),
+            Version::id);
+        complete(getVersions());
     }
 
+    /**
+     * The newest stable version, or the newest of all versions if unstable ones are allowed.
+     */
     public Version getLatestVersion(boolean unstable) {
         if (versions.isEmpty()) {
             throw new RuntimeException("no versions available at " + getMetaPath());
         }
 
-        if (unstable) {
-            for (Version version : versions) {
-                if (version.isUnstable()) {
-                    return version;
-                }
-            }
-        }
-
-        return versions.get(0);
+        Version version = versions.getLatest(v -> unstable || !v.isUnstable());
+        return version != null ? version : versions.getVersions().get(0);
     }
 
+    /**
+     * Resolve a version by id, {@code latest}, or a selector supported by {@link VersionCatalog#select}.
+     * Unstable versions are only picked by a selector when allowed.
+     */
     public Version parseVersion(String value, boolean unstable) {
         if (value == null || value.isEmpty() || value.equalsIgnoreCase("latest")) {
             return getLatestVersion(unstable);
-        } else {
-            for (Version version : versions) {
-                if (version.id.equals(value)) {
-                    return version;
-                }
-            }
-
-            return null;
         }
+
+        return versions.select(value, v -> unstable || !v.isUnstable());
     }
 
     public List<Version> getVersions() {
-        return Collections.unmodifiableList(versions);
+        return versions.getVersions();
     }
 
     public record Version(String id) {
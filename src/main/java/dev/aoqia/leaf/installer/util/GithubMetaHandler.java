@@ -16,17 +16,24 @@
 package dev.aoqia.leaf.installer.util;
 
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import dev.aoqia.leaf.installer.util.json.GitTree;
 
 /**
  * The primary use of this class is to parse git trees of a repository.
  * For example, this is used to get all the files in a specific folder under the leaf repository.
+ *
+ * <p>The whole tree of a branch is fetched with a single recursive request and shared by every handler that points
+ * at the same repository and branch, rather than walking down one folder request at a time.
  */
 public class GithubMetaHandler extends LoaderMetaHandler {
+    // Recursive trees by url, shared between handlers of the same repository and branch.
+    private static final Map<String, GitTree> TREES = new ConcurrentHashMap<>();
+
     private String[] subfolders;
 
     public GithubMetaHandler(String repoOwner, String repoName, String branch) {
@@ -40,40 +47,70 @@ public class GithubMetaHandler extends LoaderMetaHandler {
 
     @Override
     public void load() throws IOException {
-        GitTree.GitTreeObject[] tree = LeafService.queryJsonSubstitutedMaven(getMetaPath(), GitTree.class).tree();
+        final GitTree tree = getRecursiveTree(getMetaPath());
+        final String prefix = subfolders != null ? String.join("/", subfolders) + "/" : "";
+        final List<Version> temp = new ArrayList<>();
 
-        // Resolve the subfolder tree if required, used to get files in loader/ folder.
-        if (this.subfolders != null) {
-            int subfoldersFound = 0;
+        if (tree.truncated()) {
+            // Too large for a single response, walk down the folders instead.
+            for (GitTree.GitTreeObject node : getSubfolderTree()) {
+                temp.add(new Version(node));
+            }
+        } else {
+            for (GitTree.GitTreeObject node : tree.tree()) {
+                // Only the direct children of the folder, the recursive tree lists everything below it too.
+                if (node.path().startsWith(prefix) && node.path().indexOf('/', prefix.length()) < 0) {
+                    temp.add(new Version(node.path().substring(prefix.length()).replace(".json", "")));
+                }
+            }
+        }
 
-            int i = 0;
-            while (i < tree.length) {
-                GitTree.GitTreeObject node = tree[i];
+        setVersions(temp);
 
-                if (node.type().equals("tree") && node.path().equals(this.subfolders[subfoldersFound])) {
-                    tree = LeafService.queryJsonSubstitutedMaven(node.url(), GitTree.class).tree();
-                    subfoldersFound++;
-                    i = 0;
+        complete(getVersions());
+    }
+
+    private static GitTree getRecursiveTree(String url) throws IOException {
+        GitTree tree = TREES.get(url);
+
+        if (tree == null) {
+            synchronized (TREES) {
+                tree = TREES.get(url);
+
+                if (tree == null) {
+                    tree = LeafService.queryGithubJson(url + "?recursive=1", GitTree.class);
+                    TREES.put(url, tree);
                 }
+            }
+        }
+
+        return tree;
+    }
+
+    private GitTree.GitTreeObject[] getSubfolderTree() throws IOException {
+        GitTree.GitTreeObject[] tree = LeafService.queryGithubJson(getMetaPath(), GitTree.class).tree();
+
+        if (subfolders == null) {
+            return tree;
+        }
 
+        for (String subfolder : subfolders) {
+            GitTree.GitTreeObject next = null;
 
-                if (subfoldersFound > this.subfolders.length) {
+            for (GitTree.GitTreeObject node : tree) {
+                if (node.type().equals("tree") && node.path().equals(subfolder)) {
+                    next = node;
                     break;
                 }
-
-                ++i;
             }
-        }
 
-        List<Version> temp;
+            if (next == null) {
+                throw new IOException("Folder %s not found in %s".formatted(subfolder, getMetaPath()));
+            }
 
-        temp = Arrays
-            .stream(tree)
-            .map(Version::new)
-            .sorted((v1, v2) -> v2.id().compareToIgnoreCase(v1.id()))
-            .collect(Collectors.toList());
-        setVersions(temp);
+            tree = LeafService.queryGithubJson(next.url(), GitTree.class).tree();
+        }
 
-        complete(getVersions());
+        return tree;
     }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Hashes files in a single pass, however many digests are wanted.
+ *
+ * <p>Files are read with positional reads into a reused direct buffer, so the data is never copied onto the heap by the
+ * reader. Each block is fed to every digest while it is still in cache. Files are deliberately not memory mapped: on
+ * Windows a live mapping stops the file from being replaced or deleted until it is garbage collected, and callers do
+ * exactly that with files that fail verification.
+ */
+public final class Hashing {
+    // Fed to all digests before moving on, sized to stay in cache.
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(
+        () -> ByteBuffer.allocateDirect(BLOCK_SIZE));
+
+    private Hashing() {
+    }
+
+    /**
+     * Compute several digests of a file in one read.
+     *
+     * @return the digests, in the order of algorithms
+     */
+    public static byte[][] digest(Path path, Checksum.Algorithm... algorithms) throws IOException {
+        final MessageDigest[] digests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            digests[i] = algorithms[i].newDigest();
+        }
+
+        update(path, digests);
+
+        final byte[][] result = new byte[digests.length][];
+        for (int i = 0; i < digests.length; i++) {
+            result[i] = digests[i].digest();
+        }
+
+        return result;
+    }
+
+    /**
+     * Check a file against every given checksum, reading it only once. False if the file is missing, has the wrong
+     * size or there is nothing to check against.
+     */
+    public static boolean verify(Path path, Long size, List<Checksum> checksums) throws IOException {
+        if (checksums.isEmpty() || !Files.isRegularFile(path)) {
+            return false;
+        }
+
+        if (size != null && Files.size(path) != size) {
+            return false;
+        }
+
+        final Checksum.Algorithm[] algorithms = new Checksum.Algorithm[checksums.size()];
+        for (int i = 0; i < algorithms.length; i++) {
+            algorithms[i] = checksums.get(i).algorithm();
+        }
+
+        final byte[][] digests = digest(path, algorithms);
+        for (int i = 0; i < digests.length; i++) {
+            if (!checksums.get(i).matches(digests[i])) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Verify many files in parallel on the common fork join pool.
+     *
+     * @return the files that failed verification, in no particular order
+     */
+    public static List<Target> verifyAll(Collection<Target> targets) throws IOException {
+        try {
+            return targets.parallelStream().filter(target -> {
+                try {
+                    return !verify(target.path(), target.size(), target.checksums());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void update(Path path, MessageDigest[] digests) throws IOException {
+        final ByteBuffer buffer = BUFFER.get();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long position = 0;
+            int read;
+
+            // Positional reads, so nothing keeps the file open or mapped once the channel is closed.
+            while ((read = channel.read(buffer.clear(), position)) >= 0) {
+                position += read;
+                update(buffer.flip(), digests);
+            }
+        }
+    }
+
+    /**
+     * Feed the remaining bytes of buffer to every digest, leaving its position where it started.
+     */
+    private static void update(ByteBuffer buffer, MessageDigest[] digests) {
+        final int start = buffer.position();
+
+        for (MessageDigest digest : digests) {
+            buffer.position(start);
+            digest.update(buffer);
+        }
+    }
+
+    /**
+     * A file together with what it is expected to contain.
+     */
+    public record Target(Path path, Long size, List<Checksum> checksums) {}
+}
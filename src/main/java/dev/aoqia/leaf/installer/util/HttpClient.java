@@ -15,29 +15,54 @@
  */
 package dev.aoqia.leaf.installer.util;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.net.ProxySelector;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP transport used for all metadata and library requests, built on {@link java.net.http.HttpClient}.
+ *
+ * <p>One client is kept per route (direct or a specific proxy) so that every request over that route shares its
+ * connection pool, and HTTP/2 is negotiated where the server supports it, multiplexing concurrent requests to the
+ * same host over a single connection.
+ */
 public final class HttpClient {
-	// When we successfully connect to a proxy, we store it here so that we can try it first for subsequent requests.
-	private static volatile Proxy lastSuccessfulProxy;
-
 	private static final List<ProxySupplier> PROXIES = Arrays.asList(
 			uri -> Collections.singletonList(Proxy.NO_PROXY),   // Direct connect without proxy
 			uri -> ProxySelector.getDefault().select(uri),    	// Common Java proxy system properties and system configured proxies See: sun.net.spi.DefaultProxySelector
@@ -45,43 +70,311 @@ public final class HttpClient {
 			);
 
 	private static final int HTTP_TIMEOUT_MS = 8000;
+	// Head start given to each route before the next candidate is raced against it.
+	private static final int ROUTE_STAGGER_MS = 250;
+	private static final int HTTP_NOT_MODIFIED = 304;
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+	private static final int DOWNLOAD_ATTEMPTS = 3;
+	private static final String PART_SUFFIX = ".part";
+	private static final String VALIDATOR_SUFFIX = ".validator";
+	// Files at least this large are fetched in several range requests at once, see segmentedDownload.
+	private static final long SEGMENT_THRESHOLD = 4 * 1024 * 1024;
+	private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+	public static final int DEFAULT_SEGMENTS = 4;
+
+	private static volatile int segments = DEFAULT_SEGMENTS;
+
+	// Clients are expensive and own the connection pool, so only ever create one per route.
+	private static final Map<Proxy, java.net.http.HttpClient> CLIENTS = new ConcurrentHashMap<>();
+	// SOCKS proxies that have already been warned about, so a skipped proxy is reported once rather than per request.
+	private static final Set<String> SKIPPED_SOCKS = ConcurrentHashMap.newKeySet();
+
+	// Response bodies are read with blocking streams, keep that off the client's own executor.
+	private static final Executor BODY_EXECUTOR = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "HttpClient Body Reader");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// Checks every open response body for a read that has been blocked too long, see IdleTimeoutInputStream.
+	private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "HttpClient Read Watchdog");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static final int WATCHDOG_INTERVAL_MS = 500;
 
 	private HttpClient() {
 	}
 
+	/**
+	 * Set how many parallel range requests a large download is split into, 1 disables segmented downloads.
+	 */
+	public static void setSegments(int value) {
+		if (value < 1) {
+			throw new IllegalArgumentException("Segments must be at least 1, got " + value);
+		}
+
+		segments = value;
+	}
+
 	public static String readString(URL url) throws IOException {
+		return join(readStringAsync(url));
+	}
+
+	public static CompletableFuture<String> readStringAsync(URL url) {
 		return tryWithProxies(url, Utils::readString);
 	}
 
+	/**
+	 * Fetch url unless it still matches the given validators, either of which may be null.
+	 * A 304 response is returned as is with no body, for the caller to serve from its own copy.
+	 */
+	public static CompletableFuture<Response> readConditionalAsync(URL url, String etag, String lastModified) {
+		return tryWithProxies(url, new Request<>() {
+			@Override
+			public void configure(HttpRequest.Builder builder) {
+				if (etag != null) {
+					builder.header("If-None-Match", etag);
+				}
+				if (lastModified != null) {
+					builder.header("If-Modified-Since", lastModified);
+				}
+			}
+
+			@Override
+			public boolean isSuccessful(int responseCode) {
+				return responseCode == HTTP_NOT_MODIFIED || Request.super.isSuccessful(responseCode);
+			}
+
+			@Override
+			public Response read(HttpResponse<?> response, InputStream in) throws IOException {
+				HttpHeaders headers = response.headers();
+				byte[] body = response.statusCode() == HTTP_NOT_MODIFIED ? null
+						: Utils.readBytes(in, headers.firstValueAsLong("Content-Length").orElse(-1));
+
+				return new Response(response.statusCode(), body, headers.firstValue("ETag").orElse(null),
+						headers.firstValue("Last-Modified").orElse(null));
+			}
+		});
+	}
+
 	public static void downloadFile(URL url, Path path) throws IOException {
+		downloadFile(url, path, null, null);
+	}
+
+	/**
+	 * Download url to path, rejecting the file if it doesn't have the expected size or checksum.
+	 * The checksum is computed while the body is streamed to disk, either may be null to skip that check.
+	 *
+	 * <p>The body is staged in a {@code .part} file next to the target and only moved into place once complete and
+	 * verified. A partial file left behind by a dropped connection is resumed with a range request, as long as the
+	 * server still serves the same representation.
+	 *
+	 * <p>Large files are split into several range requests that are fetched at once, see
+	 * {@link #segmentedDownload(URL, Path, Probe)}. size is used to decide that when known, otherwise the server is
+	 * asked with a HEAD request.
+	 */
+	public static void downloadFile(URL url, Path path, Long size, Checksum checksum) throws IOException {
+		join(downloadFileAsync(url, path, size, checksum));
+	}
+
+	public static CompletableFuture<Void> downloadFileAsync(URL url, Path path, Long size, Checksum checksum) {
+		final Path part = path.resolveSibling(path.getFileName() + PART_SUFFIX);
+		final Path validatorFile = path.resolveSibling(path.getFileName() + PART_SUFFIX + VALIDATOR_SUFFIX);
+
 		try {
-			tryWithProxies(url, (Handler<Void>) in -> {
-				Files.createDirectories(path.getParent());
-				Files.copy(in, path, StandardCopyOption.REPLACE_EXISTING);
-				return null;
+			Files.createDirectories(path.getParent());
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+
+		final PartialDownload download = new PartialDownload(part, validatorFile, checksum);
+
+		// A digest of null means the body wasn't hashed while streaming and the staged file has to be read back.
+		final CompletableFuture<byte[]> downloaded = probeSegments(url, part, size).thenCompose(probe -> {
+			if (probe == null) {
+				return attemptDownload(url, download, 1, null).thenApply(unused -> download.digest);
+			}
+
+			return segmentedDownload(url, part, probe).thenApply(unused -> (byte[]) null).exceptionallyCompose(t -> {
+				System.err.printf("Segmented download of %s failed, retrying as a single stream: %s%n", url, describe(unwrap(t)));
+				deletePart(part, validatorFile, t);
+				return attemptDownload(url, download, 1, null).thenApply(unused -> download.digest);
 			});
-		} catch (Throwable t) {
+		});
+
+		return downloaded.thenApplyAsync(digest -> {
+			try {
+				if (size != null && Files.size(part) != size) {
+					throw new IOException(String.format("Size mismatch for %s, expected %d bytes but got %d", url, size, Files.size(part)));
+				}
+
+				if (checksum != null && !(digest != null ? checksum.matches(digest) : checksum.matches(part))) {
+					throw new IOException(String.format("Checksum mismatch for %s, expected %s", url, checksum));
+				}
+			} catch (IOException e) {
+				// The staged file is complete but wrong, resuming it would only produce the same result.
+				deletePart(part, validatorFile, e);
+				throw new UncheckedIOException(e);
+			}
+
 			try {
-				Files.deleteIfExists(path);
-			} catch (Throwable t2) {
-				t.addSuppressed(t2);
+				Utils.moveAtomically(part, path);
+				Files.deleteIfExists(validatorFile);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+			return null;
+		}, BODY_EXECUTOR);
+	}
+
+	private static CompletableFuture<Void> attemptDownload(URL url, Request<Void> download, int attempt, IOException previous) {
+		return tryWithProxies(url, download).exceptionallyCompose(t -> {
+			IOException e = unwrap(t);
+
+			if (previous != null) {
+				e.addSuppressed(previous);
 			}
 
-			throw t;
+			if (attempt >= DOWNLOAD_ATTEMPTS) {
+				return CompletableFuture.failedFuture(e);
+			}
+
+			return attemptDownload(url, download, attempt + 1, e);
+		});
+	}
+
+	/**
+	 * Decide whether a download should be segmented, completing with null if it should be a single stream instead.
+	 * Never fails, a server that can't be probed is simply downloaded the normal way.
+	 */
+	private static CompletableFuture<Probe> probeSegments(URL url, Path part, Long size) {
+		// An existing part file is resumed as a single stream, and small files aren't worth the extra requests.
+		if (segments <= 1 || Files.exists(part) || (size != null && size < SEGMENT_THRESHOLD)) {
+			return CompletableFuture.completedFuture(null);
 		}
+
+		return tryWithProxies(url, new Request<Probe>() {
+			@Override
+			public void configure(HttpRequest.Builder builder) {
+				builder.method("HEAD", HttpRequest.BodyPublishers.noBody());
+			}
+
+			@Override
+			public Probe read(HttpResponse<?> response, InputStream in) {
+				HttpHeaders headers = response.headers();
+				long length = size != null ? size : headers.firstValueAsLong("Content-Length").orElse(-1);
+
+				if (length < SEGMENT_THRESHOLD || !headers.firstValue("Accept-Ranges").orElse("").equalsIgnoreCase("bytes")) {
+					return null;
+				}
+
+				return new Probe(length, PartialDownload.getValidator(headers));
+			}
+		}).exceptionally(t -> null);
 	}
 
-	private static InputStream openUrl(URL url, Proxy proxy) throws IOException {
-		HttpURLConnection conn = (HttpURLConnection) url.openConnection(proxy);
+	/**
+	 * Fetch a file as several range requests at once, writing each straight to its offset in a preallocated part file.
+	 * On high latency links a single TCP stream rarely fills the link, so the segments are sent as HTTP/1.1 requests
+	 * to get a connection each, rather than being multiplexed over one HTTP/2 connection.
+	 * The file is verified as a whole by the caller once every segment is in.
+	 */
+	private static CompletableFuture<Void> segmentedDownload(URL url, Path part, Probe probe) {
+		final FileChannel channel;
+
+		try {
+			channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+
+		final int count = (int) Math.max(1, Math.min(segments, probe.length() / MIN_SEGMENT_SIZE));
+		final long segmentSize = (probe.length() + count - 1) / count;
+		final CompletableFuture<?>[] futures = new CompletableFuture<?>[count];
+
+		try {
+			// Preallocate, so the segments never extend the file concurrently.
+			channel.write(ByteBuffer.allocate(1), probe.length() - 1);
+		} catch (IOException e) {
+			closeQuietly(channel, e);
+			return CompletableFuture.failedFuture(e);
+		}
+
+		for (int i = 0; i < count; i++) {
+			long start = i * segmentSize;
+			long end = Math.min(probe.length(), start + segmentSize) - 1;
+			futures[i] = attemptDownload(url, new Segment(channel, start, end, probe.validator()), 1, null);
+		}
 
-		conn.setConnectTimeout(HTTP_TIMEOUT_MS);
-		conn.setReadTimeout(HTTP_TIMEOUT_MS);
-		conn.connect();
+		return CompletableFuture.allOf(futures).whenComplete((unused, t) -> {
+			if (t != null) {
+				// Don't leave the other segments writing to a file that is about to be deleted.
+				Arrays.stream(futures).forEach(future -> future.cancel(true));
+			}
 
-		int responseCode = conn.getResponseCode();
-		if (responseCode < 200 || responseCode >= 300) throw new IOException("HTTP request to "+url+" failed: "+responseCode);
+			closeQuietly(channel, t);
+		});
+	}
 
-		return conn.getInputStream();
+	private static void closeQuietly(FileChannel channel, Throwable cause) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			if (cause != null) {
+				cause.addSuppressed(e);
+			}
+		}
+	}
+
+	private static void deletePart(Path part, Path validatorFile, Throwable cause) {
+		try {
+			Files.deleteIfExists(part);
+			Files.deleteIfExists(validatorFile);
+		} catch (IOException e) {
+			cause.addSuppressed(e);
+		}
+	}
+
+	private static java.net.http.HttpClient getClient(Proxy proxy) {
+		return CLIENTS.computeIfAbsent(proxy, p -> {
+			java.net.http.HttpClient.Builder builder = java.net.http.HttpClient.newBuilder()
+					.version(java.net.http.HttpClient.Version.HTTP_2)
+					.followRedirects(java.net.http.HttpClient.Redirect.NORMAL)
+					.connectTimeout(Duration.ofMillis(HTTP_TIMEOUT_MS));
+
+			if (p.type() == Proxy.Type.DIRECT) {
+				builder.proxy(java.net.http.HttpClient.Builder.NO_PROXY);
+			} else {
+				builder.proxy(ProxySelector.of((InetSocketAddress) p.address()));
+			}
+
+			return builder.build();
+		});
+	}
+
+	/**
+	 * Send the request over a single route, completing once the response headers are in. The status is checked by the
+	 * caller, so the returned future is the exchange itself and cancelling it aborts the request.
+	 */
+	private static CompletableFuture<HttpResponse<InputStream>> openUrl(URI uri, Proxy proxy, Request<?> request) {
+		HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+				.timeout(Duration.ofMillis(HTTP_TIMEOUT_MS))
+				.GET();
+
+		try {
+			request.configure(builder);
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+
+		// The request timeout only covers the response headers, the body gets its own idle watchdog.
+		HttpResponse.BodyHandler<InputStream> bodyHandler = info -> HttpResponse.BodySubscribers.mapping(
+				HttpResponse.BodySubscribers.ofInputStream(), IdleTimeoutInputStream::new);
+
+		return getClient(proxy).sendAsync(builder.build(), bodyHandler);
 	}
 
 	// Returns the list of proxies set via environment variables.
@@ -124,73 +417,423 @@ public final class HttpClient {
 		return new Proxy(Proxy.Type.HTTP, new InetSocketAddress(host, port));
 	}
 
-	private static <T> T tryWithProxies(URL url, Handler<T> handler) throws IOException {
+	private static <T> CompletableFuture<T> tryWithProxies(URL url, Handler<T> handler) {
+		return tryWithProxies(url, (Request<T>) (response, in) -> handler.read(in));
+	}
+
+	/**
+	 * Race the request over every candidate route: the route remembered for the host first, then a direct
+	 * connection, the system proxies and finally the proxies from the environment. Each route gets a short head start
+	 * before the next one is tried alongside it, or none at all once it has failed. The first route to answer wins,
+	 * the others are abandoned, and the winner is remembered for the host across runs.
+	 */
+	private static <T> CompletableFuture<T> tryWithProxies(URL url, Request<T> request) {
 		URI uri;
 
 		try {
 			uri = url.toURI();
 		} catch (URISyntaxException e) {
-			throw new IOException(e.getMessage(), e);
+			return CompletableFuture.failedFuture(new IOException(e.getMessage(), e));
 		}
 
-		Set<Proxy> attemptedProxies = new HashSet<>();
+		List<Proxy> proxies = new ArrayList<>();
 		IOException exception = null;
 
-		// try lastSuccessfulProxy first, if available
-		if (lastSuccessfulProxy != null) {
-			attemptedProxies.add(lastSuccessfulProxy);
+		for (ProxySupplier proxySupplier : PROXIES) {
+			try {
+				for (Proxy proxy : proxySupplier.getProxies(uri)) {
+					if (proxy == null) {
+						continue;
+					}
+
+					// java.net.http can only tunnel through HTTP proxies
+					if (proxy.type() == Proxy.Type.SOCKS) {
+						if (SKIPPED_SOCKS.add(ProxyRoutes.getId(proxy))) {
+							System.err.printf("Ignoring SOCKS proxy %s, only HTTP proxies are supported%n", proxy.address());
+						}
+
+						continue;
+					}
 
-			try (InputStream is = openUrl(url, lastSuccessfulProxy)) {
-				return handler.read(is);
+					// don't attempt the same route twice
+					if (proxies.stream().noneMatch(p -> ProxyRoutes.getId(p).equals(ProxyRoutes.getId(proxy)))) {
+						proxies.add(proxy);
+					}
+				}
 			} catch (IOException e) {
-				HttpClient.lastSuccessfulProxy = null; // failed, remove priority for the specific proxy
-				exception = new IOException(String.format("Request to %s failed: %s", uri, e.getMessage()), e);
+				exception = e;
 			}
 		}
 
-		// try all other proxies
+		if (proxies.isEmpty()) {
+			// Should never happen, as we always try to connect directly first
+			return CompletableFuture.failedFuture(exception != null ? exception : new IllegalStateException("Did not attempt http connection"));
+		}
 
-		for (ProxySupplier proxySupplier : PROXIES) {
-			List<Proxy> proxies = proxySupplier.getProxies(uri);
+		// try the route that last worked for this host first, if available
+		String host = uri.getHost();
+		proxies.stream().filter(proxy -> ProxyRoutes.isPreferred(host, proxy)).findFirst().ifPresent(proxy -> {
+			proxies.remove(proxy);
+			proxies.add(0, proxy);
+		});
 
-			// Try each proxy in the list
-			for (Proxy proxy : proxies) {
-				if (proxy == null) {
-					continue;
-				}
+		return tryRoutes(uri, request, proxies, exception);
+	}
 
-				// Don't attempt to use a proxy that we have already tried
-				if (!attemptedProxies.add(proxy)) {
-					continue;
+	private static <T> CompletableFuture<T> tryRoutes(URI uri, Request<T> request, List<Proxy> proxies, IOException exception) {
+		String host = uri.getHost();
+
+		return new RouteRace(uri, request, proxies).start().thenApplyAsync(winner -> {
+			try (InputStream is = winner.response().body()) {
+				T value = request.read(winner.response(), is);
+				ProxyRoutes.put(host, winner.proxy()); // Store the working route so we can try it first next time
+				return value;
+			} catch (IOException e) {
+				throw new RouteException(winner.proxy(), e);
+			}
+		}, BODY_EXECUTOR).exceptionallyCompose(t -> {
+			Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+
+			if (!(cause instanceof RouteException re)) {
+				IOException e = unwrap(cause);
+
+				if (exception != null) {
+					e.addSuppressed(exception);
 				}
 
-				try {
-					T value;
+				return CompletableFuture.failedFuture(e);
+			}
 
-					try (InputStream is = openUrl(url, proxy)) {
-						value = handler.read(is);
-					}
+			// The body failed after the route answered, fall back to the remaining routes like a failed connection.
+			if (isRouteFailure(re.getCause())) {
+				ProxyRoutes.remove(host, re.proxy);
+			}
+			IOException ioe = new IOException(String.format("Request to %s using %s failed: %s", uri, re.proxy, describe(re.getCause())), re.getCause());
+
+			if (exception != null) {
+				ioe.addSuppressed(exception);
+			}
+
+			List<Proxy> remaining = new ArrayList<>(proxies);
+			remaining.remove(re.proxy);
+
+			if (remaining.isEmpty()) {
+				return CompletableFuture.failedFuture(ioe);
+			}
+
+			return tryRoutes(uri, request, remaining, ioe);
+		});
+	}
 
-					HttpClient.lastSuccessfulProxy = proxy; // Store the last used proxy so we can try it first next time
+	/**
+	 * Whether a failure was the route's fault (connect, TLS, reset, timeout), rather than an unusable response from
+	 * a server that was reached fine.
+	 */
+	private static boolean isRouteFailure(Throwable t) {
+		while ((t instanceof CompletionException || t instanceof UncheckedIOException) && t.getCause() != null) {
+			t = t.getCause();
+		}
 
-					return value;
-				} catch (IOException e) {
-					IOException ioe = new IOException(String.format("Request to %s using %s failed: %s", uri, proxy, e.getMessage()), e);
+		return !(t instanceof ResponseException);
+	}
+
+	private static String describe(Throwable t) {
+		return t.getMessage() != null ? t.getMessage() : t.toString();
+	}
+
+	/**
+	 * Wait for a request started by one of the async methods, rethrowing its failure as the IOException it was.
+	 */
+	public static <T> T join(CompletableFuture<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for request", e);
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		}
+	}
 
-					if (exception == null) {
-						exception = ioe;
-					} else {
-						exception.addSuppressed(ioe);
+	/**
+	 * Whether a request failed because the server answered with a 4xx status, meaning the server was reached fine but
+	 * doesn't have, or won't serve, what was asked for.
+	 */
+	public static boolean isClientError(Throwable t) {
+		for (; t != null; t = t.getCause()) {
+			if (t instanceof ResponseException e) {
+				return e.statusCode >= 400 && e.statusCode < 500;
+			}
+		}
+
+		return false;
+	}
+
+	private static IOException unwrap(Throwable t) {
+		while ((t instanceof CompletionException || t instanceof ExecutionException || t instanceof UncheckedIOException)
+				&& t.getCause() != null) {
+			t = t.getCause();
+		}
+
+		if (t instanceof IOException e) {
+			return e;
+		} else if (t instanceof RuntimeException e) {
+			throw e;
+		} else if (t instanceof Error e) {
+			throw e;
+		}
+
+		return new IOException(t);
+	}
+
+	/**
+	 * The result of a conditional request, body is null when the server answered 304 Not Modified.
+	 */
+	public record Response(int statusCode, byte[] body, String etag, String lastModified) {
+		public boolean isNotModified() {
+			return statusCode == HTTP_NOT_MODIFIED;
+		}
+	}
+
+	private record Winner(Proxy proxy, HttpResponse<InputStream> response) {
+	}
+
+	private record Probe(long length, String validator) {
+	}
+
+	private static final class RouteException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private final transient Proxy proxy;
+
+		RouteException(Proxy proxy, IOException cause) {
+			super(cause);
+			this.proxy = proxy;
+		}
+	}
+
+	/**
+	 * The route worked, but the server answered with a response that can't be used, such as a 404. Unlike a transport
+	 * failure this says nothing about the route, so it is never a reason to forget the route for the host.
+	 */
+	private static final class ResponseException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		private final int statusCode;
+
+		ResponseException(String message, int statusCode) {
+			super(message);
+			this.statusCode = statusCode;
+		}
+	}
+
+	/**
+	 * Happy eyeballs style race of one request over several routes, see {@link #tryWithProxies(URL, Request)}.
+	 */
+	private static final class RouteRace {
+		private final URI uri;
+		private final Request<?> request;
+		private final List<Proxy> proxies;
+		private final List<CompletableFuture<HttpResponse<InputStream>>> attempts = new ArrayList<>();
+		private final CompletableFuture<Winner> result = new CompletableFuture<>();
+		private int started;
+		private int failed;
+		private IOException exception;
+
+		RouteRace(URI uri, Request<?> request, List<Proxy> proxies) {
+			this.uri = uri;
+			this.request = request;
+			this.proxies = proxies;
+		}
+
+		CompletableFuture<Winner> start() {
+			startNext();
+			return result;
+		}
+
+		private synchronized void startNext() {
+			if (result.isDone() || started >= proxies.size()) {
+				return;
+			}
+
+			final Proxy proxy = proxies.get(started++);
+			final int index = started;
+			// Attached to the exchange itself, so a response that arrives after losing the race is always closed.
+			final CompletableFuture<HttpResponse<InputStream>> exchange = openUrl(uri, proxy, request);
+			attempts.add(exchange);
+			exchange.whenComplete((response, t) -> complete(proxy, response, t));
+
+			CompletableFuture.delayedExecutor(ROUTE_STAGGER_MS, TimeUnit.MILLISECONDS).execute(() -> {
+				synchronized (this) {
+					// Only stagger the next route if nothing else started it already.
+					if (started == index) {
+						startNext();
 					}
 				}
+			});
+		}
+
+		private synchronized void complete(Proxy proxy, HttpResponse<InputStream> response, Throwable t) {
+			if (result.isDone()) {
+				// Lost the race, or was cancelled after another route won.
+				if (response != null) {
+					closeQuietly(response);
+				}
+
+				return;
+			}
+
+			if (t == null) {
+				t = checkStatus(response);
+			}
+
+			if (t == null) {
+				result.complete(new Winner(proxy, response));
+				// Aborts the exchanges still in flight, any that already answered are closed by complete().
+				attempts.forEach(exchange -> exchange.cancel(true));
+				return;
+			}
+
+			if (isRouteFailure(t)) {
+				ProxyRoutes.remove(uri.getHost(), proxy); // failed, remove priority for the specific route
+			}
+
+			// Never throw from here, the race would never complete.
+			Throwable cause = t;
+			while ((cause instanceof CompletionException || cause instanceof UncheckedIOException) && cause.getCause() != null) {
+				cause = cause.getCause();
+			}
+
+			IOException e = cause instanceof IOException ioe ? ioe : new IOException(cause);
+			IOException ioe = new IOException(String.format("Request to %s using %s failed: %s", uri, proxy, describe(e)), e);
+
+			if (exception == null) {
+				exception = ioe;
+			} else {
+				exception.addSuppressed(ioe);
+			}
+
+			if (++failed == proxies.size()) {
+				result.completeExceptionally(exception);
+			} else {
+				// Don't wait out the stagger once a route has failed.
+				startNext();
 			}
 		}
 
-		if (exception != null) {
-			throw exception;
-		} else {
-			// Should never happen, as we always try to connect directly first
-			throw new IllegalStateException("Did not attempt http connection");
+		/**
+		 * The failure for a response whose status the request doesn't accept, or null if it does. The body of a
+		 * rejected response is closed.
+		 */
+		private IOException checkStatus(HttpResponse<InputStream> response) {
+			int responseCode = response.statusCode();
+
+			if (request.isSuccessful(responseCode)) {
+				return null;
+			}
+
+			closeQuietly(response);
+
+			try {
+				if (responseCode == HTTP_RANGE_NOT_SATISFIABLE) request.rangeNotSatisfiable();
+			} catch (IOException e) {
+				return e;
+			}
+
+			return new ResponseException("HTTP request to " + uri + " failed: " + responseCode, responseCode);
+		}
+
+		private static void closeQuietly(HttpResponse<InputStream> response) {
+			try {
+				response.body().close();
+			} catch (IOException ignored) {
+				// Ignored
+			}
+		}
+	}
+
+	/**
+	 * A response body that fails with {@link HttpTimeoutException} once a single read has been blocked for longer than
+	 * {@link #HTTP_TIMEOUT_MS}, like the read timeout of a socket. The underlying stream is closed to unblock the read,
+	 * so a stalled connection surfaces as an error that the caller can retry or resume.
+	 */
+	private static final class IdleTimeoutInputStream extends FilterInputStream {
+		private final ScheduledFuture<?> watchdog;
+		// When the read in progress started, or 0 when no read is blocked.
+		private volatile long readStart;
+		private volatile boolean timedOut;
+
+		IdleTimeoutInputStream(InputStream in) {
+			super(in);
+			watchdog = WATCHDOG.scheduleWithFixedDelay(this::check, WATCHDOG_INTERVAL_MS, WATCHDOG_INTERVAL_MS,
+					TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public int read() throws IOException {
+			begin();
+
+			try {
+				return super.read();
+			} catch (IOException e) {
+				throw failure(e);
+			} finally {
+				readStart = 0;
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			begin();
+
+			try {
+				return super.read(b, off, len);
+			} catch (IOException e) {
+				throw failure(e);
+			} finally {
+				readStart = 0;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			watchdog.cancel(false);
+			super.close();
+		}
+
+		private void begin() throws IOException {
+			if (timedOut) {
+				throw failure(null);
+			}
+
+			readStart = System.nanoTime();
+		}
+
+		private IOException failure(IOException cause) {
+			if (!timedOut) {
+				return cause;
+			}
+
+			HttpTimeoutException e = new HttpTimeoutException("No data received for " + HTTP_TIMEOUT_MS + " ms");
+			if (cause != null) {
+				e.initCause(cause);
+			}
+
+			return e;
+		}
+
+		private void check() {
+			long start = readStart;
+
+			if (start != 0 && System.nanoTime() - start > TimeUnit.MILLISECONDS.toNanos(HTTP_TIMEOUT_MS)) {
+				timedOut = true;
+
+				try {
+					close();
+				} catch (IOException ignored) {
+					// The blocked read fails either way
+				}
+			}
 		}
 	}
 
@@ -203,4 +846,174 @@ public final class HttpClient {
 	private interface Handler<T> {
 		T read(InputStream in) throws IOException;
 	}
+
+	private interface Request<T> {
+		default void configure(HttpRequest.Builder builder) throws IOException {
+		}
+
+		default void rangeNotSatisfiable() throws IOException {
+		}
+
+		default boolean isSuccessful(int responseCode) {
+			return responseCode >= 200 && responseCode < 300;
+		}
+
+		T read(HttpResponse<?> response, InputStream in) throws IOException;
+	}
+
+	/**
+	 * Appends a response body to a {@code .part} file, asking the server for only the missing bytes when possible.
+	 * The validator (ETag or Last-Modified) of the first response is kept next to the part file, so a resume is only
+	 * honored via If-Range when the remote file hasn't changed in the meantime.
+	 */
+	private static final class PartialDownload implements Request<Void> {
+		private final Path part;
+		private final Path validatorFile;
+		private final Checksum checksum;
+		private long offset;
+		private byte[] digest;
+
+		PartialDownload(Path part, Path validatorFile, Checksum checksum) {
+			this.part = part;
+			this.validatorFile = validatorFile;
+			this.checksum = checksum;
+		}
+
+		@Override
+		public void configure(HttpRequest.Builder builder) throws IOException {
+			offset = 0;
+
+			if (Files.isRegularFile(part) && Files.isRegularFile(validatorFile)) {
+				long length = Files.size(part);
+				String validator = Files.readString(validatorFile).trim();
+
+				if (length > 0 && !validator.isEmpty()) {
+					builder.header("Range", "bytes=" + length + "-");
+					builder.header("If-Range", validator);
+					offset = length;
+				}
+			}
+		}
+
+		@Override
+		public void rangeNotSatisfiable() throws IOException {
+			// Whatever we have staged doesn't line up with the remote file anymore, start over next attempt.
+			Files.deleteIfExists(part);
+			Files.deleteIfExists(validatorFile);
+		}
+
+		@Override
+		public Void read(HttpResponse<?> response, InputStream in) throws IOException {
+			final HttpHeaders headers = response.headers();
+			final boolean resumed = offset > 0 && response.statusCode() == 206
+				&& headers.firstValue("Content-Range").orElse("").startsWith("bytes " + offset + "-");
+
+			if (!resumed) {
+				// Full body, either a fresh download or the server ignored/rejected our range.
+				String validator = getValidator(headers);
+
+				if (validator != null) {
+					Files.writeString(validatorFile, validator);
+				} else {
+					Files.deleteIfExists(validatorFile);
+				}
+			} else {
+				System.out.printf("Resuming download of %s from %d bytes%n", response.uri(), offset);
+			}
+
+			MessageDigest md = checksum != null ? checksum.newDigest() : null;
+
+			if (md != null && resumed) {
+				// Catch the digest up with the bytes we already have.
+				try (InputStream existing = Files.newInputStream(part)) {
+					existing.transferTo(new DigestOutputStream(OutputStream.nullOutputStream(), md));
+				}
+			}
+
+			final long expected = headers.firstValueAsLong("Content-Length").orElse(-1);
+			final long received;
+
+			try (OutputStream out = resumed
+				? Files.newOutputStream(part, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+				: Files.newOutputStream(part)) {
+				received = (md != null ? new DigestInputStream(in, md) : in).transferTo(out);
+			}
+
+			// A dropped connection can look like a clean end of stream, keep the part file so the next attempt resumes.
+			if (expected >= 0 && received != expected) {
+				throw new IOException(String.format("Connection closed after %d of %d bytes", received, expected));
+			}
+
+			digest = md != null ? md.digest() : null;
+			return null;
+		}
+
+		// Weak ETags can't be used with If-Range, fall back to Last-Modified for those.
+		private static String getValidator(HttpHeaders headers) {
+			String etag = headers.firstValue("ETag").orElse(null);
+
+			if (etag != null && !etag.startsWith("W/")) {
+				return etag;
+			}
+
+			return headers.firstValue("Last-Modified").orElse(null);
+		}
+	}
+
+	/**
+	 * One byte range of a segmented download, written with positional writes into the shared part file.
+	 * A retry only asks for the bytes of the range that haven't been written yet.
+	 */
+	private static final class Segment implements Request<Void> {
+		private final FileChannel channel;
+		private final long end;
+		private final String validator;
+		private long position;
+
+		Segment(FileChannel channel, long start, long end, String validator) {
+			this.channel = channel;
+			this.position = start;
+			this.end = end;
+			this.validator = validator;
+		}
+
+		@Override
+		public void configure(HttpRequest.Builder builder) {
+			builder.version(java.net.http.HttpClient.Version.HTTP_1_1);
+			builder.header("Range", "bytes=" + position + "-" + end);
+
+			if (validator != null) {
+				// The remote file changing half way would corrupt the result, get a full 200 body instead and fail.
+				builder.header("If-Range", validator);
+			}
+		}
+
+		@Override
+		public Void read(HttpResponse<?> response, InputStream in) throws IOException {
+			if (response.statusCode() != 206
+					|| !response.headers().firstValue("Content-Range").orElse("").startsWith("bytes " + position + "-" + end + "/")) {
+				throw new ResponseException(String.format("Server did not honor range %d-%d of %s", position, end, response.uri()),
+						response.statusCode());
+			}
+
+			final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+			int len;
+
+			while (position <= end && (len = in.read(buffer.array(), 0, (int) Math.min(buffer.capacity(), end - position + 1))) >= 0) {
+				buffer.limit(len);
+
+				while (buffer.hasRemaining()) {
+					position += channel.write(buffer, position);
+				}
+
+				buffer.clear();
+			}
+
+			if (position <= end) {
+				throw new IOException(String.format("Connection closed with %d bytes of range left", end - position + 1));
+			}
+
+			return null;
+		}
+	}
 }
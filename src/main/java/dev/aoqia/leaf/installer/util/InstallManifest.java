@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import dev.aoqia.leaf.installer.util.json.InstallState;
+import dev.aoqia.leaf.installer.util.json.LoaderJson;
+
+/**
+ * The state of an install, stored as {@code .leaf/install-state.json} in the game directory: which libraries it
+ * placed, with their hashes, sizes and modification times.
+ *
+ * <p>A reinstall of the same versions whose files are all untouched is a no-op, without hashing anything or asking the
+ * network for the loader json. An upgrade only downloads the libraries that changed, and afterwards removes the ones
+ * the previous install placed that aren't needed anymore, so they don't end up on the classpath.
+ */
+public final class InstallManifest {
+    public static final String FILE_NAME = "install-state.json";
+    public static final int FORMAT_VERSION = 1;
+
+    private final Path gameDir;
+    private final Path libsDir;
+    private final InstallState previous;
+    private final Map<String, InstallState.Artifact> previousByPath = new HashMap<>();
+    private final List<LibraryVerifier.Entry> entries = new ArrayList<>();
+
+    private final String side;
+    private final String loader;
+    private final String gameVersion;
+    private final String mainClass;
+
+    /**
+     * @param previous the state of the install being replaced, see {@link #read(Path)}
+     */
+    public InstallManifest(Path gameDir, InstallState previous, String side, String loader, String gameVersion,
+        String mainClass) {
+        this.gameDir = gameDir;
+        this.libsDir = gameDir.resolve(Utils.LEAF_FOLDER).resolve("libraries");
+        this.previous = previous;
+        this.side = side;
+        this.loader = loader;
+        this.gameVersion = gameVersion;
+        this.mainClass = mainClass;
+
+        if (previous != null) {
+            for (InstallState.Artifact artifact : previous.artifacts()) {
+                previousByPath.put(artifact.path(), artifact);
+            }
+        }
+    }
+
+    public static Path getPath(Path gameDir) {
+        return gameDir.resolve(Utils.LEAF_FOLDER).resolve(FILE_NAME);
+    }
+
+    /**
+     * Read the state of the install in gameDir, or null if there is none that this installer understands.
+     */
+    public static InstallState read(Path gameDir) {
+        final Path path = getPath(gameDir);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        try {
+            final InstallState state = Utils.deserializeJson(Files.readAllBytes(path), InstallState.class);
+            return state != null && state.version() == FORMAT_VERSION && state.artifacts() != null ? state : null;
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable install state " + path + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Whether gameDir already holds exactly this install, judged only by the sizes and modification times of the
+     * files it placed.
+     */
+    public static boolean isUpToDate(Path gameDir, InstallState state, String side, String loader,
+        String gameVersion) {
+        if (state == null || !side.equals(state.side()) || !loader.equals(state.loader())
+            || !Objects.equals(gameVersion, state.gameVersion())) {
+            return false;
+        }
+
+        for (InstallState.Artifact artifact : state.artifacts()) {
+            if (!isUntouched(gameDir, artifact)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * The libraries of an install, in classpath order.
+     */
+    public static List<Path> getLibraries(Path gameDir, InstallState state) {
+        final List<Path> libraries = new ArrayList<>(state.artifacts().size());
+
+        for (InstallState.Artifact artifact : state.artifacts()) {
+            libraries.add(resolve(gameDir, artifact.path()));
+        }
+
+        return libraries;
+    }
+
+    /**
+     * Add a library to the install.
+     *
+     * @return true if the previous install placed the same library and its file hasn't been touched since, so it
+     * doesn't need to be downloaded or verified
+     */
+    public boolean add(LoaderJson.Library json, Path target) {
+        entries.add(new LibraryVerifier.Entry(json, target));
+
+        final InstallState.Artifact artifact = previousByPath.get(relativize(target));
+
+        // A local jar can change without its name changing.
+        return artifact != null && (json.url() == null || !json.url().startsWith("file:"))
+            && artifact.name().equals(json.name()) && Objects.equals(artifact.url(), json.url())
+            && Objects.equals(artifact.checksum(), getChecksum(json)) && isUntouched(gameDir, artifact);
+    }
+
+    /**
+     * Record the libraries added as the new state of the install, once they are all in place, and delete the files
+     * left behind by the previous install.
+     */
+    public InstallState commit(InstallerProgress progress) throws IOException {
+        final List<InstallState.Artifact> artifacts = new ArrayList<>(entries.size());
+        final Set<Path> current = new HashSet<>();
+
+        for (LibraryVerifier.Entry entry : entries) {
+            final Path target = entry.target();
+
+            artifacts.add(new InstallState.Artifact(entry.json().name(), entry.json().url(),
+                getChecksum(entry.json()), relativize(target), Files.size(target),
+                Files.getLastModifiedTime(target).toMillis()));
+            current.add(target.toAbsolutePath().normalize());
+        }
+
+        final InstallState state = new InstallState(FORMAT_VERSION, side, loader, gameVersion, mainClass, artifacts);
+        write(state);
+
+        for (Path path : findStale(current)) {
+            Files.deleteIfExists(path);
+            progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.install.removed")).format(
+                new Object[] { path.getFileName() }));
+        }
+
+        return state;
+    }
+
+    /**
+     * Files that were placed by the previous install but aren't part of this one. Without a previous state, anything
+     * in the libraries folder that isn't part of this install is left over from an older installer.
+     */
+    private List<Path> findStale(Set<Path> current) throws IOException {
+        final List<Path> stale = new ArrayList<>();
+
+        if (previous != null) {
+            for (InstallState.Artifact artifact : previous.artifacts()) {
+                final Path path = resolve(gameDir, artifact.path()).toAbsolutePath().normalize();
+
+                // Never follow a tampered state file out of the libraries folder.
+                if (path.startsWith(libsDir.toAbsolutePath().normalize()) && !current.contains(path)) {
+                    stale.add(path);
+                }
+            }
+        } else if (Files.isDirectory(libsDir)) {
+            try (Stream<Path> stream = Files.walk(libsDir)) {
+                stream
+                    .filter(Files::isRegularFile)
+                    .filter(path -> !current.contains(path.toAbsolutePath().normalize()))
+                    .forEach(stale::add);
+            }
+        }
+
+        return stale;
+    }
+
+    private void write(InstallState state) throws IOException {
+        final Path path = getPath(gameDir);
+
+        Files.createDirectories(path.getParent());
+        Utils.writeAtomically(path, os -> Utils.serializeJson(state, os));
+    }
+
+    private String relativize(Path target) {
+        return gameDir.toAbsolutePath().normalize().relativize(target.toAbsolutePath().normalize()).toString()
+            .replace(File.separatorChar, '/');
+    }
+
+    private static Path resolve(Path gameDir, String path) {
+        return gameDir.resolve(path.replace('/', File.separatorChar));
+    }
+
+    private static boolean isUntouched(Path gameDir, InstallState.Artifact artifact) {
+        final Path path = resolve(gameDir, artifact.path());
+
+        try {
+            return Files.size(path) == artifact.size()
+                && Files.getLastModifiedTime(path).toMillis() == artifact.modified();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String getChecksum(LoaderJson.Library json) {
+        final Checksum checksum = Checksum.strongest(json);
+        return checksum != null ? checksum.toString() : null;
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.util;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads everything the installer needs from a jar in one pass over its central directory: the leaf descriptors and
+ * the names of its classes.
+ *
+ * <p>Only the end of the jar and its central directory are read, with positional reads rather than a mapping for the
+ * same reasons as {@link Hashing}, and no entry other than the descriptors is ever touched. The most recently used
+ * results are kept by file identity and replaced when the size or modification time of the jar changes, so the
+ * hardlinked copies of a batch install are only inspected once.
+ */
+public final class JarInspector {
+    public static final String MOD_JSON = "leaf.mod.json";
+    public static final String INSTALLER_JSON = "leaf-installer.json";
+
+    private static final Set<String> DESCRIPTORS = Set.of(MOD_JSON, INSTALLER_JSON);
+    // Far more jars than an install has, the contents of a jar are mostly its class names.
+    private static final int MAX_CACHED = 256;
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_HEADER = 0x06054b50;
+    private static final int ZIP64_END_HEADER = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int END_SIZE = 22;
+    private static final int MAX_COMMENT = 0xFFFF;
+    private static final int SHORT_TAIL = 1024;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    // Creating an inflater allocates its native state, which costs more than inflating a descriptor.
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+    // In access order, so the first entry is the least recently used.
+    private static final Map<Object, Contents> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+
+    private JarInspector() {
+    }
+
+    /**
+     * Inspect a jar, or return the cached result if it hasn't changed since.
+     */
+    public static Contents inspect(Path jar) throws IOException {
+        final Path path = jar.toAbsolutePath().normalize();
+        final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        final long modified = attributes.lastModifiedTime().toMillis();
+        // Links to the same file share a file key, where the file system has one.
+        final Object key = attributes.fileKey() != null ? attributes.fileKey() : path;
+
+        synchronized (CACHE) {
+            final Contents cached = CACHE.get(key);
+            if (cached != null && cached.size() == attributes.size() && cached.modified() == modified) {
+                return cached;
+            }
+        }
+
+        final Contents contents;
+        try {
+            contents = read(path, attributes.size(), modified);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Invalid jar " + jar, e);
+        }
+
+        synchronized (CACHE) {
+            CACHE.put(key, contents);
+
+            if (CACHE.size() > MAX_CACHED) {
+                final Iterator<Object> eldest = CACHE.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+
+        return contents;
+    }
+
+    private static Contents read(Path jar, long size, long modified) throws IOException {
+        try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+            // Jars rarely have a comment, so look at the last bytes before reading the longest comment possible.
+            ByteBuffer tail = read(channel, Math.max(0, size - SHORT_TAIL), (int) Math.min(size, SHORT_TAIL), jar);
+            int end = findEnd(tail);
+            if (end < 0 && size > SHORT_TAIL) {
+                final long tailStart = Math.max(0, size - END_SIZE - MAX_COMMENT);
+                tail = read(channel, tailStart, (int) (size - tailStart), jar);
+                end = findEnd(tail);
+            }
+            if (end < 0) {
+                throw new IOException("Not a jar " + jar);
+            }
+
+            long count = Short.toUnsignedInt(tail.getShort(end + 10));
+            long directorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+            long offset = Integer.toUnsignedLong(tail.getInt(end + 16));
+
+            // Zip64 archives keep the real values in a second record, found through a locator before the end record.
+            if ((count == 0xFFFF || directorySize == ZIP64_MAGIC || offset == ZIP64_MAGIC) && end >= 20
+                && tail.getInt(end - 20) == ZIP64_LOCATOR) {
+                final ByteBuffer record = read(channel, tail.getLong(end - 12), 56, jar);
+                if (record.getInt(0) != ZIP64_END_HEADER) {
+                    throw new IOException("Invalid zip64 end record in " + jar);
+                }
+
+                count = record.getLong(32);
+                directorySize = record.getLong(40);
+                offset = record.getLong(48);
+            }
+
+            if (offset < 0 || directorySize < 0 || directorySize > Integer.MAX_VALUE || offset + directorySize > size) {
+                throw new IOException("Invalid central directory in " + jar);
+            }
+
+            // Only the central directory is read, the entries themselves are never touched apart from descriptors.
+            final ByteBuffer directory = read(channel, offset, (int) directorySize, jar);
+            return readDirectory(channel, directory, count, jar, size, modified);
+        }
+    }
+
+    private static Contents readDirectory(FileChannel channel, ByteBuffer directory, long count, Path jar, long size,
+        long modified) throws IOException {
+        final Map<String, byte[]> descriptors = new HashMap<>();
+        final List<String> classes = new ArrayList<>();
+        int position = 0;
+
+        for (long i = 0; i < count; i++) {
+            if (directory.getInt(position) != CENTRAL_HEADER) {
+                throw new IOException("Invalid central directory in " + jar);
+            }
+
+            final int method = Short.toUnsignedInt(directory.getShort(position + 10));
+            long compressedSize = Integer.toUnsignedLong(directory.getInt(position + 20));
+            long uncompressedSize = Integer.toUnsignedLong(directory.getInt(position + 24));
+            final int nameLength = Short.toUnsignedInt(directory.getShort(position + 28));
+            final int extraLength = Short.toUnsignedInt(directory.getShort(position + 30));
+            final int commentLength = Short.toUnsignedInt(directory.getShort(position + 32));
+            long localOffset = Integer.toUnsignedLong(directory.getInt(position + 42));
+            final String name = getString(directory, position + 46, nameLength);
+
+            if (isClass(name)) {
+                classes.add(name.substring(0, name.length() - ".class".length()));
+            } else if (DESCRIPTORS.contains(name)) {
+                // Only the fields that overflowed are in the zip64 extra field, in this order.
+                int extra = findExtra(directory, position + 46 + nameLength, extraLength, 0x0001);
+                if (extra >= 0 && uncompressedSize == ZIP64_MAGIC) {
+                    uncompressedSize = directory.getLong(extra);
+                    extra += 8;
+                }
+                if (extra >= 0 && compressedSize == ZIP64_MAGIC) {
+                    compressedSize = directory.getLong(extra);
+                    extra += 8;
+                }
+                if (extra >= 0 && localOffset == ZIP64_MAGIC) {
+                    localOffset = directory.getLong(extra);
+                }
+
+                descriptors.put(name, readEntry(channel, jar, name, method, localOffset, compressedSize,
+                    uncompressedSize));
+            }
+
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+
+        return new Contents(size, modified, Map.copyOf(descriptors), List.copyOf(classes));
+    }
+
+    /**
+     * Find the end of central directory record in the tail of a jar, which is followed by a comment of up to 64 KiB.
+     *
+     * @return the position of the record, or -1 if tail doesn't hold it
+     */
+    private static int findEnd(ByteBuffer tail) {
+        final int last = tail.limit() - END_SIZE;
+
+        for (int position = last; position >= 0 && position >= last - MAX_COMMENT; position--) {
+            if (tail.getInt(position) == END_HEADER
+                && position + END_SIZE + Short.toUnsignedInt(tail.getShort(position + 20)) == tail.limit()) {
+                return position;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int findExtra(ByteBuffer buffer, int position, int length, int id) {
+        final int end = position + length;
+
+        while (position + 4 <= end) {
+            final int size = Short.toUnsignedInt(buffer.getShort(position + 2));
+            if (Short.toUnsignedInt(buffer.getShort(position)) == id) {
+                return position + 4;
+            }
+
+            position += 4 + size;
+        }
+
+        return -1;
+    }
+
+    private static byte[] readEntry(FileChannel channel, Path jar, String name, int method, long localOffset,
+        long compressedSize, long uncompressedSize) throws IOException {
+        final ByteBuffer header = read(channel, localOffset, 30, jar);
+        if (header.getInt(0) != LOCAL_HEADER || compressedSize > Integer.MAX_VALUE
+            || uncompressedSize > Integer.MAX_VALUE) {
+            throw new IOException("Invalid entry " + name + " in " + jar);
+        }
+
+        // The local header repeats the name but may have a different extra field than the central directory.
+        final long start = localOffset + 30 + Short.toUnsignedInt(header.getShort(26))
+            + Short.toUnsignedInt(header.getShort(28));
+        final ByteBuffer data = read(channel, start, (int) compressedSize, jar);
+        final byte[] result = new byte[(int) uncompressedSize];
+
+        if (method == 0) {
+            data.get(result);
+            return result;
+        } else if (method != 8) {
+            throw new IOException("Unsupported compression method " + method + " for " + name + " in " + jar);
+        }
+
+        final Inflater inflater = INFLATER.get();
+        try {
+            inflater.setInput(data);
+
+            int read = 0;
+            while (read < result.length && !inflater.finished()) {
+                final int n = inflater.inflate(result, read, result.length - read);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+
+                read += n;
+            }
+
+            if (read != result.length) {
+                throw new IOException("Truncated entry " + name + " in " + jar);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt entry " + name + " in " + jar, e);
+        } finally {
+            inflater.reset();
+        }
+
+        return result;
+    }
+
+    /**
+     * Read length bytes at position into a little endian heap buffer.
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int length, Path jar) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of " + jar);
+            }
+        }
+
+        return buffer.flip();
+    }
+
+    private static boolean isClass(String name) {
+        return name.endsWith(".class") && !name.startsWith("META-INF/")
+            && !name.endsWith("module-info.class") && !name.endsWith("package-info.class");
+    }
+
+    private static String getString(ByteBuffer buffer, int position, int length) {
+        final byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * What a jar holds, as far as the installer cares.
+     *
+     * @param descriptors the uncompressed leaf descriptors present in the jar, by entry name
+     * @param classes     the internal names of the classes in the jar, without module and package info
+     */
+    public record Contents(long size, long modified, Map<String, byte[]> descriptors, List<String> classes) {
+        public byte[] getDescriptor(String name) throws IOException {
+            final byte[] data = descriptors.get(name);
+            if (data == null) {
+                throw new FileNotFoundException(name);
+            }
+
+            return data;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.util;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Server JVM options sized for the machine the installer runs on, instead of the stock ones written for desktop
+ * clients. Heap, garbage collector and GC thread counts are derived from the core count and memory, capped by the
+ * cgroup limits when running in a container. Servers that share the host split it evenly, see {@link #setServers(int)}.
+ */
+public final class JvmProfile {
+    private static final long MIB = 1024 * 1024;
+    private static final long GIB = 1024 * MIB;
+    // The game keeps a lot outside the heap (natives, direct buffers, the map cache).
+    private static final long MIN_RESERVED = GIB;
+    private static final long MIN_HEAP = 512 * MIB;
+    // Above this the JVM can't use compressed pointers, so G1 heaps stop just short of it.
+    private static final long COMPRESSED_OOPS_LIMIT = 31 * GIB;
+    private static final long ZGC_MIN_HEAP = 16 * GIB;
+    private static final int ZGC_MIN_CPUS = 8;
+
+    private static volatile boolean enabled;
+    private static volatile int servers = 1;
+
+    private JvmProfile() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    public static int getServers() {
+        return servers;
+    }
+
+    /**
+     * Set how many servers share the host, each is sized for its share of the memory and cores.
+     */
+    public static void setServers(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("Server count must be at least 1");
+        }
+
+        servers = value;
+    }
+
+    /**
+     * Replace the tunable options of vmArgs with the ones for host, keeping every other option in place.
+     */
+    public static List<String> apply(List<String> vmArgs, Host host) {
+        final List<String> result = new ArrayList<>(vmArgs.size() + 6);
+
+        for (String arg : vmArgs) {
+            if (!isTuned(arg)) {
+                result.add(arg);
+            }
+        }
+
+        result.addAll(getArgs(host));
+        return result;
+    }
+
+    /**
+     * Whether an option is one that the profile sets, and so replaces.
+     */
+    public static boolean isTuned(String arg) {
+        return arg.startsWith("-Xms") || arg.startsWith("-Xmx")
+            || arg.matches("-XX:[+-]Use\\w*GC")
+            || arg.startsWith("-XX:ParallelGCThreads=") || arg.startsWith("-XX:ConcGCThreads=")
+            || arg.startsWith("-XX:MaxGCPauseMillis=");
+    }
+
+    public static List<String> getArgs(Host host) {
+        return getArgs(host, servers);
+    }
+
+    /**
+     * The options for one server when servers of them share host, each getting an equal share of its memory and cores.
+     */
+    public static List<String> getArgs(Host host, int servers) {
+        final List<String> args = new ArrayList<>();
+        final long reserved = Math.max(MIN_RESERVED, host.memory() / 4);
+        long heap = Math.max(MIN_HEAP, (host.memory() - reserved) / servers);
+        final int cpus = Math.max(1, host.cpus() / servers);
+
+        if (cpus >= ZGC_MIN_CPUS && heap >= ZGC_MIN_HEAP) {
+            args.add("-XX:+UseZGC");
+        } else if (cpus > 1) {
+            heap = Math.min(heap, COMPRESSED_OOPS_LIMIT);
+            args.add("-XX:+UseG1GC");
+            args.add("-XX:MaxGCPauseMillis=50");
+        } else {
+            // Concurrent collectors only add overhead without a core to spare.
+            args.add("-XX:+UseSerialGC");
+        }
+
+        args.add(0, "-Xmx" + heap / MIB + "m");
+        // Start at a quarter and grow as needed, so a server only commits the memory it actually uses.
+        args.add(0, "-Xms" + Math.min(heap, Math.max(MIN_HEAP, heap / 4)) / MIB + "m");
+
+        if (cpus > 1) {
+            // The JVM's own defaults, but from the cores actually available to the server.
+            final int parallel = cpus <= 8 ? cpus : 8 + (cpus - 8) * 5 / 8;
+            args.add("-XX:ParallelGCThreads=" + parallel);
+            args.add("-XX:ConcGCThreads=" + Math.max(1, (parallel + 2) / 4));
+        }
+
+        return args;
+    }
+
+    /**
+     * The cores and memory available to a server started on this machine.
+     */
+    public record Host(int cpus, long memory) {
+        public static Host detect() {
+            int cpus = Runtime.getRuntime().availableProcessors();
+            long memory = getPhysicalMemory();
+
+            final long cpuLimit = getCgroupCpuLimit();
+            if (cpuLimit > 0) {
+                cpus = (int) Math.max(1, Math.min(cpus, cpuLimit));
+            }
+
+            final long memoryLimit = getCgroupMemoryLimit();
+            if (memoryLimit > 0) {
+                memory = Math.min(memory, memoryLimit);
+            }
+
+            return new Host(cpus, memory);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d cores, %.1f GiB", cpus, (double) memory / GIB);
+        }
+
+        private static long getPhysicalMemory() {
+            if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+                return os.getTotalMemorySize();
+            }
+
+            return Runtime.getRuntime().maxMemory();
+        }
+
+        /**
+         * The cgroup cpu quota rounded up to whole cores, or -1 if there is none. Supports cgroup v2 and v1.
+         */
+        private static long getCgroupCpuLimit() {
+            final String v2 = readCgroup(Path.of("/sys/fs/cgroup/cpu.max"));
+            if (v2 != null) {
+                final String[] parts = v2.split("\\s+");
+                return parts.length == 2 ? divideCeil(parseLimit(parts[0]), parseLimit(parts[1])) : -1;
+            }
+
+            return divideCeil(parseLimit(readCgroup(Path.of("/sys/fs/cgroup/cpu/cpu.cfs_quota_us"))),
+                parseLimit(readCgroup(Path.of("/sys/fs/cgroup/cpu/cpu.cfs_period_us"))));
+        }
+
+        private static long getCgroupMemoryLimit() {
+            final String v2 = readCgroup(Path.of("/sys/fs/cgroup/memory.max"));
+            if (v2 != null) {
+                return parseLimit(v2);
+            }
+
+            // v1 reports an unlimited group as a huge number instead of max.
+            final long v1 = parseLimit(readCgroup(Path.of("/sys/fs/cgroup/memory/memory.limit_in_bytes")));
+            return v1 < Long.MAX_VALUE / 2 ? v1 : -1;
+        }
+
+        private static long divideCeil(long quota, long period) {
+            return quota > 0 && period > 0 ? (quota + period - 1) / period : -1;
+        }
+
+        private static long parseLimit(String value) {
+            if (value == null || value.equals("max")) {
+                return -1;
+            }
+
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        private static String readCgroup(Path path) {
+            try {
+                return Files.isRegularFile(path) ? Files.readString(path).trim() : null;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+}
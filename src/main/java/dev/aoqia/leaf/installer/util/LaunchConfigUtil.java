@@ -15,26 +15,66 @@
  */
 package dev.aoqia.leaf.installer.util;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.StringJoiner;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import dev.aoqia.leaf.installer.Main;
+import dev.aoqia.leaf.installer.util.json.InstallState;
 import dev.aoqia.leaf.installer.util.json.LauncherConfig;
 
 public class LaunchConfigUtil {
     private static final String ORIGINAL_CONFIG_NAME = "ProjectZomboid64.json";
+    // Entries of the classpath jar get a fixed time, so the same classpath always gives the same jar.
+    private static final long CLASSPATH_JAR_TIME = 315532800000L;
+
+    // Options on the launch script's java line that JvmProfile replaces, see JvmProfile.isTuned.
+    private static final Pattern TUNED_SCRIPT_ARG = Pattern.compile("[ \\t]+(?:-Xm[sx]\\S+|-XX:[+-]Use\\w*GC"
+        + "|-XX:(?:ParallelGCThreads|ConcGCThreads|MaxGCPauseMillis)=\\S+)(?=\\s)");
+
+    private static volatile boolean compactClasspath;
 
     private final Path gameDir;
     private final Path libsDir;
+    private final InstallState state;
 
     public LaunchConfigUtil(Path gameDir) {
+        this(gameDir, InstallManifest.read(gameDir));
+    }
+
+    /**
+     * @param state the install to put on the classpath, or null to use every file in the libraries folder
+     */
+    public LaunchConfigUtil(Path gameDir, InstallState state) {
         this.gameDir = gameDir;
         this.libsDir = gameDir.resolve(Utils.LEAF_FOLDER).resolve("libraries");
+        this.state = state;
+    }
+
+    /**
+     * Put a single classpath jar on the config's classpath instead of every library, and pass the classpath of
+     * Windows launch scripts in an argument file instead of the command line.
+     */
+    public static void setCompactClasspath(boolean value) {
+        compactClasspath = value;
     }
 
     private static Path getLaunchScriptPath(Path gameDir) {
@@ -45,6 +85,20 @@ public class LaunchConfigUtil {
         };
     }
 
+    /**
+     * The libraries of the install in classpath order. Installs from before the install state existed fall back to
+     * whatever is in the libraries folder.
+     */
+    private List<Path> getLibraries() throws IOException {
+        if (state != null) {
+            return InstallManifest.getLibraries(this.gameDir, state);
+        }
+
+        try (Stream<Path> stream = Files.walk(this.libsDir).filter(Files::isRegularFile)) {
+            return stream.toList();
+        }
+    }
+
     public void createConfig(String name, String mainClass) throws IOException {
         final var originalConfig = this.gameDir.resolve(ORIGINAL_CONFIG_NAME);
         final var newConfig = this.gameDir.resolve(name + ".json");
@@ -61,7 +115,7 @@ public class LaunchConfigUtil {
 
         LauncherConfig newConfigJson;
         try {
-            newConfigJson = Utils.deserializeJson(Files.readString(newConfig), LauncherConfig.class);
+            newConfigJson = Utils.deserializeJson(Files.readAllBytes(newConfig), LauncherConfig.class);
         } catch (IOException e) {
             throw new RuntimeException("Failed to read bootstrapper config: ", e);
         }
@@ -71,17 +125,109 @@ public class LaunchConfigUtil {
         // Add our loader's libraries to the classpath.
         // Java 6+ supports cp wildcards but the bootstrapper hard crashes with them.
         final List<String> classpath = newConfigJson.getClasspath();
-        try (Stream<Path> stream = Files.walk(libsDir).filter(Files::isRegularFile)) {
-            stream.forEach(path -> classpath.add(this.gameDir.relativize(path).toString()));
+        final List<Path> leafClasspath = getLeafClasspath(name);
+
+        if (AppCds.isEnabled()) {
+            // The archive is only mapped when its classpath is the start of the launch classpath.
+            classpath.addAll(0, leafClasspath.stream().map(Path::toString).toList());
+
+            final Path archive = AppCds.update(this.gameDir, name, leafClasspath, getLibraries());
+            if (archive != null) {
+                newConfigJson.getVmArgs().removeIf(arg -> arg.startsWith(AppCds.ARCHIVE_OPTION));
+                newConfigJson.getVmArgs().add(AppCds.ARCHIVE_OPTION + this.gameDir.relativize(archive));
+            }
+        } else {
+            leafClasspath.forEach(path -> classpath.add(path.toString()));
         }
 
-        try {
-            Files.writeString(newConfig, newConfigJson.toString());
+        if (JvmProfile.isEnabled()) {
+            newConfigJson.setVmArgs(tuneVmArgs(name, newConfigJson.getVmArgs()));
+        }
+
+        try (OutputStream os = Files.newOutputStream(newConfig)) {
+            Utils.serializeJson(newConfigJson, os);
         } catch (IOException e) {
             throw new RuntimeException("Failed to write bootstrapper config: ", e);
         }
     }
 
+    private static String describe(JvmProfile.Host host) {
+        final int servers = JvmProfile.getServers();
+        return servers > 1 ? host + " shared by " + servers + " servers" : host.toString();
+    }
+
+    /**
+     * Apply the {@link JvmProfile} for this machine to vmArgs. The stock args are kept in .leaf/name.vmargs, one per
+     * line, so they can be restored by hand.
+     */
+    private List<String> tuneVmArgs(String name, List<String> vmArgs) throws IOException {
+        final Path backup = this.gameDir.resolve(Utils.LEAF_FOLDER).resolve(name + ".vmargs");
+        Files.createDirectories(backup.getParent());
+        Files.write(backup, vmArgs);
+
+        final JvmProfile.Host host = JvmProfile.Host.detect();
+        final List<String> tuned = JvmProfile.apply(vmArgs, host);
+        System.out.println("Tuning JVM for " + describe(host) + ": " + String.join(" ", JvmProfile.getArgs(host)));
+        return tuned;
+    }
+
+    /**
+     * The loader classpath of both the config and the script, relative to the game directory. They must agree, as
+     * they share one class data sharing archive that is only valid for the classpath it was dumped with.
+     */
+    private List<Path> getLeafClasspath(String name) throws IOException {
+        final List<Path> leafClasspath = new ArrayList<>();
+        if (compactClasspath) {
+            leafClasspath.add(this.gameDir.relativize(createClasspathJar(name)));
+        } else {
+            for (Path path : getLibraries()) {
+                leafClasspath.add(this.gameDir.relativize(path));
+            }
+        }
+
+        return leafClasspath;
+    }
+
+    /**
+     * Write a jar that holds nothing but a manifest with the install's libraries as its Class-Path, in the order
+     * of the loader json. It is only rewritten when the classpath changes.
+     */
+    private Path createClasspathJar(String name) throws IOException {
+        final Path jar = this.gameDir.resolve(Utils.LEAF_FOLDER).resolve(name + "-classpath.jar");
+        final StringJoiner classpath = new StringJoiner(" ");
+
+        for (Path lib : getLibraries()) {
+            final String path = jar.getParent().relativize(lib).toString().replace(File.separatorChar, '/');
+
+            try {
+                classpath.add(new URI(null, null, path, null).getRawPath());
+            } catch (URISyntaxException e) {
+                throw new IOException("Invalid library path " + path, e);
+            }
+        }
+
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classpath.toString());
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JarOutputStream out = new JarOutputStream(bytes)) {
+            final JarEntry entry = new JarEntry(JarFile.MANIFEST_NAME);
+            entry.setTime(CLASSPATH_JAR_TIME);
+            out.putNextEntry(entry);
+            manifest.write(out);
+            out.closeEntry();
+        }
+
+        final byte[] data = bytes.toByteArray();
+        if (!Files.isRegularFile(jar) || !Arrays.equals(Files.readAllBytes(jar), data)) {
+            Files.createDirectories(jar.getParent());
+            Files.write(jar, data);
+        }
+
+        return jar;
+    }
+
     public void createScript(String name, String mainClass) throws IOException {
         final var template = getLaunchScriptPath(this.gameDir);
         if (Files.notExists(template)) {
@@ -109,12 +255,56 @@ public class LaunchConfigUtil {
             throw new RuntimeException("Failed to find match regex in launch script");
         }
 
+        final var leafLibs = new StringBuilder();
+        final var leafClasspath = getLeafClasspath(name);
+        for (Path path : leafClasspath) {
+            leafLibs.append(path).append(";");
+        }
+
         var libs = new StringBuilder(matcher.group(1));
-        try (final var stream = Files.walk(this.libsDir).filter(Files::isRegularFile)) {
-            stream.forEach(lib -> libs.append(this.gameDir.relativize(lib)).append(";"));
+        var launch = mainClass;
+
+        if (AppCds.isEnabled()) {
+            // The archive is only mapped when its classpath is the start of the launch classpath.
+            libs.insert(0, leafLibs);
+
+            final Path archive = AppCds.update(this.gameDir, name, leafClasspath, getLibraries());
+            if (archive != null) {
+                launch = AppCds.ARCHIVE_OPTION + this.gameDir.relativize(archive) + " " + mainClass;
+            }
+        } else {
+            if (!libs.isEmpty() && libs.charAt(libs.length() - 1) != ';') {
+                libs.append(';');
+            }
+            libs.append(leafLibs);
+        }
+
+        var newScript = templateData;
+
+        if (JvmProfile.isEnabled()) {
+            // The template itself stays untouched, so it doubles as the backup of the stock args.
+            final var host = JvmProfile.Host.detect();
+            final var profileArgs = String.join(" ", JvmProfile.getArgs(host));
+            System.out.println("Tuning JVM for " + describe(host) + ": " + profileArgs);
+
+            newScript = TUNED_SCRIPT_ARG.matcher(newScript).replaceAll("");
+            launch = profileArgs + " " + launch;
+        }
+
+        newScript = newScript.replace(matcher.group(2), launch);
+        final var classpathArg = Pattern.compile("-cp\\s+%PZ_CLASSPATH%", Pattern.CASE_INSENSITIVE)
+            .matcher(newScript);
+
+        if (compactClasspath && classpathArg.find()) {
+            // Backslashes are escapes inside quotes of an argument file.
+            final var argFile = gameDir.resolve(Utils.LEAF_FOLDER).resolve(name + ".args");
+            Files.writeString(argFile, "-cp \"" + libs.toString().replace("\\", "\\\\") + "\"\r\n");
+
+            newScript = classpathArg.replaceFirst(Matcher.quoteReplacement("@" + this.gameDir.relativize(argFile)));
+        } else {
+            newScript = newScript.replace(matcher.group(1), libs);
         }
 
-        final var newScript = templateData.replace(matcher.group(1), libs).replace(matcher.group(2), mainClass);
         final var out = gameDir.resolve(name + ".bat");
         Files.writeString(out, newScript);
 
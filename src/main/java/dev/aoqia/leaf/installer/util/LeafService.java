@@ -16,15 +16,27 @@
 package dev.aoqia.leaf.installer.util;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
+import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
 public final class LeafService {
-    private static int activeIndex = 0; // index into INSTANCES or -1 if set to a fixed service
-    private static LeafService fixedService;
+    private static volatile LeafService fixedService;
+    private static volatile String githubUrl = Reference.GITHUB_API;
 
     private final String meta;
     private final String maven;
+    private final MirrorStats stats = new MirrorStats();
 
     LeafService(String meta, String maven) {
         this.meta = meta;
@@ -35,9 +47,9 @@ public final class LeafService {
      * Query Leaf Meta path and decode as JSON.
      */
     public static <T> T queryMetaJson(String path, Class<T> clazz) throws IOException {
-        return invokeWithFallbacks(
-            (service, arg) -> Utils.deserializeJson(HttpClient.readString(URI.create(service.meta + arg).toURL()),
-                clazz), path);
+        byte[] data = invokeWithFallbacks((service, arg) -> MetaCache.read(URI.create(service.meta + arg).toURL()),
+            bytes -> bytes.length, path);
+        return Utils.deserializeJson(data, clazz);
     }
 
     /**
@@ -45,49 +57,125 @@ public final class LeafService {
      */
     public static <T> T queryJsonSubstitutedMaven(String url, Class<T> clazz) throws IOException {
         if (!url.startsWith(Reference.DEFAULT_MAVEN_SERVER)) {
-            return Utils.deserializeJson(HttpClient.readString(URI.create(url).toURL()), clazz);
+            return Utils.deserializeJson(MetaCache.read(URI.create(url).toURL()), clazz);
         }
 
         String path = url.substring(Reference.DEFAULT_MAVEN_SERVER.length());
 
-        return invokeWithFallbacks(
-            (service, arg) -> Utils.deserializeJson(HttpClient.readString(URI.create(service.meta + arg).toURL()),
-                clazz), path);
+        byte[] data = invokeWithFallbacks((service, arg) -> MetaCache.read(URI.create(service.maven + arg).toURL()),
+            bytes -> bytes.length, path);
+        return Utils.deserializeJson(data, clazz);
+    }
+
+    /**
+     * Query and decode JSON from a GitHub API url, substituting the API with the configured override.
+     */
+    public static <T> T queryGithubJson(String url, Class<T> clazz) throws IOException {
+        if (url.startsWith(Reference.GITHUB_API)) {
+            url = githubUrl + url.substring(Reference.GITHUB_API.length());
+        }
+
+        return Utils.deserializeJson(MetaCache.read(URI.create(url).toURL()), clazz);
     }
 
     /**
      * Download url to file, substituting Fabric Maven with fallbacks or overrides.
      */
     public static void downloadSubstitutedMaven(String url, Path out) throws IOException {
+        downloadSubstitutedMaven(url, out, null, null);
+    }
+
+    /**
+     * Download url to file, substituting Fabric Maven with fallbacks or overrides and verifying the result.
+     */
+    public static void downloadSubstitutedMaven(String url, Path out, Long size, Checksum checksum)
+        throws IOException {
+        downloadSubstitutedMaven(url, out, size, checksum, host -> null);
+    }
+
+    /**
+     * Download url to file, substituting Fabric Maven with fallbacks or overrides and verifying the result.
+     * Every attempt holds a permit from hostPermits for the host it actually connects to, or none if it returns null.
+     */
+    public static void downloadSubstitutedMaven(String url, Path out, Long size, Checksum checksum,
+        Function<String, Semaphore> hostPermits) throws IOException {
         if (!url.startsWith(Reference.DEFAULT_MAVEN_SERVER)) {
-            HttpClient.downloadFile(URI.create(url).toURL(), out);
+            download(URI.create(url).toURL(), out, size, checksum, hostPermits);
             return;
         }
 
         String path = url.substring(Reference.DEFAULT_MAVEN_SERVER.length());
 
         invokeWithFallbacks((service, arg) -> {
-            HttpClient.downloadFile(URI.create(service.meta + arg).toURL(), out);
-            return null;
-        }, path);
+            HttpClient.downloadFile(URI.create(service.maven + arg).toURL(), out, size, checksum);
+            return Files.size(out);
+        }, Long::longValue, path, service -> hostPermits.apply(URI.create(service.maven).getHost()));
+    }
+
+    private static void download(URL url, Path out, Long size, Checksum checksum,
+        Function<String, Semaphore> hostPermits) throws IOException {
+        final Semaphore permits = hostPermits.apply(url.getHost());
+        acquire(permits, url.getHost());
+
+        try {
+            HttpClient.downloadFile(url, out, size, checksum);
+        } finally {
+            release(permits);
+        }
     }
 
-    private static <A, R> R invokeWithFallbacks(Handler<A, R> handler, A arg) throws IOException {
-        if (fixedService != null) {
-            return handler.apply(fixedService, arg);
+    private static void acquire(Semaphore permits, String host) throws InterruptedIOException {
+        if (permits == null) {
+            return;
         }
 
-        int index = activeIndex;
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a connection to " + host);
+        }
+    }
+
+    private static void release(Semaphore permits) {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
+    /**
+     * Invoke handler on the best mirror first, moving on to the next best on failure.
+     * Mirrors are ranked by their expected request time, and mirrors with an open circuit breaker are skipped
+     * unless every mirror is open, in which case they are all tried anyway rather than failing outright.
+     */
+    private static <A, R> R invokeWithFallbacks(Handler<A, R> handler, ToLongFunction<R> size, A arg)
+        throws IOException {
+        return invokeWithFallbacks(handler, size, arg, service -> null);
+    }
+
+    /**
+     * Like {@link #invokeWithFallbacks(Handler, ToLongFunction, Object)}, but every attempt first waits for a permit
+     * from the semaphore permits returns for its service, or none if it returns null.
+     */
+    private static <A, R> R invokeWithFallbacks(Handler<A, R> handler, ToLongFunction<R> size, A arg,
+        Function<LeafService, Semaphore> permits) throws IOException {
+        final LeafService fixed = fixedService;
+        if (fixed != null) {
+            return fixed.invoke(handler, size, arg, permits.apply(fixed));
+        }
+
+        final List<LeafService> services = getServices();
+        final List<LeafService> skipped = new ArrayList<>();
         IOException exc = null;
 
-        do {
-            LeafService service = Reference.LEAF_SERVICES[index];
+        for (LeafService service : services) {
+            if (!service.stats.tryAcquire()) {
+                skipped.add(service);
+                continue;
+            }
 
             try {
-                R ret = handler.apply(service, arg);
-                activeIndex = index;
-
-                return ret;
+                return service.invoke(handler, size, arg, permits.apply(service));
             } catch (IOException e) {
                 System.out.println("service " + service + " failed: " + e);
 
@@ -97,13 +185,90 @@ public final class LeafService {
                     exc.addSuppressed(e);
                 }
             }
+        }
 
-            index = (index + 1) % Reference.LEAF_SERVICES.length;
-        } while (index != activeIndex);
+        if (skipped.size() == services.size()) {
+            for (LeafService service : skipped) {
+                try {
+                    return service.invoke(handler, size, arg, permits.apply(service));
+                } catch (IOException e) {
+                    System.out.println("service " + service + " failed: " + e);
+
+                    if (exc == null) {
+                        exc = e;
+                    } else {
+                        exc.addSuppressed(e);
+                    }
+                }
+            }
+        }
 
         throw exc;
     }
 
+    private <A, R> R invoke(Handler<A, R> handler, ToLongFunction<R> size, A arg) throws IOException {
+        return invoke(handler, size, arg, null);
+    }
+
+    /**
+     * Invoke handler on this service, timing only the handler itself so that the wait for permits is not
+     * recorded as latency of this mirror.
+     */
+    private <A, R> R invoke(Handler<A, R> handler, ToLongFunction<R> size, A arg, Semaphore permits)
+        throws IOException {
+        acquire(permits, URI.create(maven).getHost());
+
+        try {
+            final long start = System.nanoTime();
+
+            try {
+                R ret = handler.apply(this, arg);
+                stats.recordSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                    size.applyAsLong(ret));
+                return ret;
+            } catch (IOException e) {
+                if (HttpClient.isClientError(e)) {
+                    stats.recordClientError();
+                } else {
+                    stats.recordFailure();
+                }
+
+                throw e;
+            }
+        } finally {
+            release(permits);
+        }
+    }
+
+    /**
+     * All services in use, best first.
+     */
+    public static List<LeafService> getServices() {
+        final LeafService fixed = fixedService;
+        if (fixed != null) {
+            return List.of(fixed);
+        }
+
+        final List<LeafService> services = new ArrayList<>(Arrays.asList(Reference.LEAF_SERVICES));
+        services.sort(Comparator.comparingDouble(service -> service.stats.getScore()));
+        return services;
+    }
+
+    /**
+     * Measure every service by fetching the game version manifest from it, bypassing the metadata cache.
+     */
+    public static void probeServices() {
+        for (LeafService service : getServices()) {
+            try {
+                service.invoke((s, path) -> HttpClient.join(
+                        HttpClient.readConditionalAsync(URI.create(s.meta + path).toURL(), null, null)).body(),
+                    data -> data.length, Reference.ZOMBOID_VERSION_MANIFEST);
+            } catch (IOException e) {
+                System.out.println("service " + service + " failed: " + e);
+            }
+        }
+    }
+
     /**
      * Configure fixed service urls, disabling fallbacks or the defaults.
      */
@@ -119,10 +284,17 @@ public final class LeafService {
             mavenUrl = Reference.DEFAULT_MAVEN_SERVER;
         }
 
-        activeIndex = -1;
         fixedService = new LeafService(metaUrl, mavenUrl);
     }
 
+    /**
+     * Configure the url GitHub API requests are sent to instead, such as a {@link CacheServer}.
+     * Ensure you include the trailing /
+     */
+    public static void setGithubUrl(String url) {
+        githubUrl = url;
+    }
+
     public String getMetaUrl() {
         return meta;
     }
@@ -131,6 +303,10 @@ public final class LeafService {
         return maven;
     }
 
+    public MirrorStats getStats() {
+        return stats;
+    }
+
     @Override
     public String toString() {
         return "LeafService{" + "meta='" + meta + '\'' + ", maven='" + maven + "'}";
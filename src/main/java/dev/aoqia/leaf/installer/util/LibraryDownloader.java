@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dev.aoqia.leaf.installer.util.json.LoaderJson;
+
+/**
+ * Downloads a set of libraries concurrently, shared by the client and server installers.
+ * Libraries that are already present with the expected checksum are skipped. The rest are scheduled largest first,
+ * connections to a single host are capped and the first failure aborts the remaining downloads.
+ * When installing from a {@link Bundle} the libraries are extracted from it instead and nothing is downloaded.
+ */
+public final class LibraryDownloader {
+    public static final int DEFAULT_THREADS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    public static final int DEFAULT_CONNECTIONS_PER_HOST = 4;
+
+    private static volatile int threads = DEFAULT_THREADS;
+    private static volatile int connectionsPerHost = DEFAULT_CONNECTIONS_PER_HOST;
+
+    private final InstallerProgress progress;
+    private final Bundle bundle;
+    private final List<Task> tasks = new ArrayList<>();
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    public LibraryDownloader(InstallerProgress progress) {
+        this(progress, null);
+    }
+
+    public LibraryDownloader(InstallerProgress progress, Bundle bundle) {
+        this.progress = progress;
+        this.bundle = bundle;
+    }
+
+    /**
+     * Configure the maximum amount of libraries downloaded at once.
+     */
+    public static void setThreads(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("threads must be at least 1: " + value);
+        }
+
+        threads = value;
+    }
+
+    /**
+     * Configure the maximum amount of concurrent connections made to a single host.
+     */
+    public static void setConnectionsPerHost(int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("connections per host must be at least 1: " + value);
+        }
+
+        connectionsPerHost = value;
+    }
+
+    public void add(LoaderJson.Library json, Path target) {
+        tasks.add(new Task(json, new Library(json), target));
+    }
+
+    public void download() throws IOException {
+        if (tasks.isEmpty()) {
+            return;
+        } else if (bundle != null) {
+            extract();
+            return;
+        }
+
+        // Largest jars first so the long downloads don't end up as the tail of the install.
+        final List<Task> queue = new ArrayList<>(tasks);
+        queue.sort(Comparator.comparingLong(Task::sortSize).reversed());
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, queue.size()), r -> {
+            Thread thread = new Thread(r, "Library Downloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final ExecutorCompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+        final AtomicBoolean failed = new AtomicBoolean();
+        final AtomicInteger completed = new AtomicInteger();
+
+        try {
+            for (Task task : queue) {
+                completion.submit(() -> {
+                    if (!failed.get()) {
+                        run(task, completed, queue.size());
+                    }
+
+                    return null;
+                });
+            }
+
+            for (int i = 0; i < queue.size(); i++) {
+                try {
+                    completion.take().get();
+                } catch (ExecutionException e) {
+                    failed.set(true);
+
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException ioe) {
+                        throw ioe;
+                    }
+
+                    throw new IOException(cause);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Library download interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void run(Task task, AtomicInteger completed, int total) throws IOException {
+        final Checksum checksum = Checksum.strongest(task.json());
+        if (Checksum.verify(task.target(), task.json().size(), checksum)) {
+            report(new MessageFormat(Utils.BUNDLE.getString("progress.download.library.valid")).format(
+                new Object[] { task.library().dependency, completed.incrementAndGet(), total }));
+            return;
+        }
+
+        final Optional<Path> cached = ArtifactCache.find(task.json());
+        if (cached.isPresent()) {
+            ArtifactCache.place(cached.get(), task.target());
+            report(new MessageFormat(Utils.BUNDLE.getString("progress.download.library.cached")).format(
+                new Object[] { task.library().dependency, completed.incrementAndGet(), total }));
+            return;
+        }
+
+        report(new MessageFormat(Utils.BUNDLE.getString("progress.download.library.entry")).format(
+            new Object[] { task.library().dependency }));
+
+        try {
+            // Capped by the mirror each attempt actually connects to, not the host in the library url.
+            LeafService.downloadSubstitutedMaven(task.library().getURL(), task.target(), task.json().size(),
+                checksum, host -> hostPermits.computeIfAbsent(host, h -> new Semaphore(connectionsPerHost)));
+        } catch (IOException e) {
+            throw new IOException("Failed to download library %s".formatted(task.library().artifactId), e);
+        }
+
+        ArtifactCache.store(task.json(), task.target());
+
+        report(new MessageFormat(Utils.BUNDLE.getString("progress.download.library.done")).format(
+            new Object[] { task.library().dependency, completed.incrementAndGet(), total }));
+    }
+
+    private void extract() throws IOException {
+        final Map<String, Task> pending = new HashMap<>();
+        final Map<String, Path> targets = new HashMap<>();
+        final AtomicInteger completed = new AtomicInteger();
+
+        for (Task task : tasks) {
+            if (Checksum.verify(task.target(), task.json().size(), Checksum.strongest(task.json()))) {
+                report(new MessageFormat(Utils.BUNDLE.getString("progress.download.library.valid")).format(
+                    new Object[] { task.library().dependency, completed.incrementAndGet(), tasks.size() }));
+            } else {
+                pending.put(task.json().name(), task);
+                targets.put(task.json().name(), task.target());
+            }
+        }
+
+        bundle.extract(targets, name -> {
+            final Task task = pending.get(name);
+            ArtifactCache.store(task.json(), task.target());
+
+            report(new MessageFormat(Utils.BUNDLE.getString("progress.download.library.bundled")).format(
+                new Object[] { task.library().dependency, completed.incrementAndGet(), tasks.size() }));
+        });
+    }
+
+    private void report(String text) {
+        // InstallerProgress implementations aren't expected to be thread safe.
+        synchronized (progress) {
+            progress.updateProgress(text);
+        }
+    }
+
+    private record Task(LoaderJson.Library json, Library library, Path target) {
+        long sortSize() {
+            return json.size() != null ? json.size() : 0;
+        }
+    }
+}
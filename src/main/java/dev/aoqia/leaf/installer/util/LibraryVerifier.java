@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import dev.aoqia.leaf.installer.util.json.LoaderJson;
+
+/**
+ * Checks an installed libraries folder against the libraries its loader json expects, without downloading anything.
+ * Every declared hash of every library is checked, in parallel, see {@link Hashing#verifyAll}. Libraries that declare
+ * no hash at all (such as the loader itself) can only be checked for presence and size.
+ *
+ * <p>Only jars that the previous install recorded in its state count as extra, anything else in the libraries folder
+ * was put there by someone else and is left alone.
+ */
+public final class LibraryVerifier {
+    private static final Pattern LOADER_JAR = Pattern.compile("loader-(\\d.*)\\.jar");
+
+    private final Path libsDir;
+    private final List<Path> installed;
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * @param installed the libraries recorded by the install state, see {@link InstallManifest#getLibraries}
+     */
+    public LibraryVerifier(Path libsDir, List<Path> installed) {
+        this.libsDir = libsDir;
+        this.installed = installed;
+    }
+
+    /**
+     * Find the version of the loader installed into a libraries folder, for when it isn't given explicitly.
+     */
+    public static Optional<String> findLoaderVersion(Path libsDir) throws IOException {
+        if (!Files.isDirectory(libsDir)) {
+            return Optional.empty();
+        }
+
+        try (Stream<Path> stream = Files.list(libsDir)) {
+            return stream
+                .map(path -> LOADER_JAR.matcher(path.getFileName().toString()))
+                .filter(Matcher::matches)
+                .map(matcher -> matcher.group(1))
+                .max(Utils::compareVersions);
+        }
+    }
+
+    public void add(LoaderJson.Library json, Path target) {
+        entries.add(new Entry(json, target));
+    }
+
+    public Report verify() throws IOException {
+        final List<Entry> missing = new ArrayList<>();
+        final List<Entry> corrupt = new ArrayList<>();
+        final Map<Hashing.Target, Entry> hashed = new HashMap<>();
+        int valid = 0;
+
+        for (Entry entry : entries) {
+            final Long size = entry.json().size();
+
+            if (!Files.isRegularFile(entry.target())) {
+                missing.add(entry);
+            } else if (size != null && Files.size(entry.target()) != size) {
+                corrupt.add(entry);
+            } else {
+                final List<Checksum> checksums = Checksum.all(entry.json());
+
+                if (checksums.isEmpty()) {
+                    valid++;
+                } else {
+                    hashed.put(new Hashing.Target(entry.target(), size, checksums), entry);
+                }
+            }
+        }
+
+        final List<Hashing.Target> failed = Hashing.verifyAll(hashed.keySet());
+        for (Hashing.Target target : failed) {
+            corrupt.add(hashed.get(target));
+        }
+        valid += hashed.size() - failed.size();
+
+        return new Report(missing, corrupt, findExtra(), valid);
+    }
+
+    /**
+     * Download the missing and corrupt libraries of a report again, and only if asked to delete the extra ones.
+     * Libraries that passed verification are left alone.
+     */
+    public void repair(Report report, boolean deleteExtra, InstallerProgress progress) throws IOException {
+        final LibraryDownloader downloader = new LibraryDownloader(progress);
+
+        for (Entry entry : report.getBroken()) {
+            // Never resume from a corrupt file.
+            Files.deleteIfExists(entry.target());
+            downloader.add(entry.json(), entry.target());
+        }
+
+        downloader.download();
+
+        if (!deleteExtra) {
+            return;
+        }
+
+        for (Path path : report.extra()) {
+            Files.deleteIfExists(path);
+            progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.verify.deleted")).format(
+                new Object[] { libsDir.relativize(path) }));
+        }
+    }
+
+    private List<Path> findExtra() {
+        final Set<Path> expected = new HashSet<>();
+        for (Entry entry : entries) {
+            expected.add(entry.target().toAbsolutePath().normalize());
+        }
+
+        final Path root = libsDir.toAbsolutePath().normalize();
+        final List<Path> extra = new ArrayList<>();
+
+        for (Path library : installed) {
+            final Path path = library.toAbsolutePath().normalize();
+
+            // Never follow a tampered state file out of the libraries folder.
+            if (path.startsWith(root) && path.getFileName().toString().endsWith(".jar") && Files.isRegularFile(path)
+                && !expected.contains(path)) {
+                extra.add(path);
+            }
+        }
+
+        return extra;
+    }
+
+    public record Entry(LoaderJson.Library json, Path target) {}
+
+    public record Report(List<Entry> missing, List<Entry> corrupt, List<Path> extra, int valid) {
+        /**
+         * Whether every expected library is in place. Extra jars are reported, but don't make an install invalid.
+         */
+        public boolean isValid() {
+            return missing.isEmpty() && corrupt.isEmpty();
+        }
+
+        public List<Entry> getBroken() {
+            final List<Entry> broken = new ArrayList<>(missing);
+            broken.addAll(corrupt);
+            return broken;
+        }
+
+        /**
+         * Print every problem found, one line each.
+         */
+        public void print(InstallerProgress progress) {
+            for (Entry entry : missing) {
+                progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.verify.missing")).format(
+                    new Object[] { entry.json().name() }));
+            }
+            for (Entry entry : corrupt) {
+                progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.verify.corrupt")).format(
+                    new Object[] { entry.json().name() }));
+            }
+            for (Path path : extra) {
+                progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.verify.extra")).format(
+                    new Object[] { path.getFileName() }));
+            }
+
+            progress.updateProgress(new MessageFormat(Utils.BUNDLE.getString("progress.verify.summary")).format(
+                new Object[] { valid, missing.size(), corrupt.size(), extra.size() }));
+        }
+    }
+}
@@ -15,13 +15,12 @@
  */
 package dev.aoqia.leaf.installer.util;
 
-import java.util.Collections;
 import java.util.List;
 
 import dev.aoqia.leaf.installer.util.json.GitTree;
 
 public abstract class LoaderMetaHandler extends MetaHandler<LoaderMetaHandler.Version> {
-    private List<Version> versions;
+    private VersionCatalog<Version> versions;
 
     public LoaderMetaHandler(String metaPath) {
         super(metaPath);
@@ -32,29 +31,26 @@ public abstract class LoaderMetaHandler extends MetaHandler<LoaderMetaHandler.Ve
             throw new RuntimeException("no versions available at " + getMetaPath());
         }
 
-        return versions.get(0);
+        return versions.getVersions().get(0);
     }
 
+    /**
+     * Resolve a version by id, {@code latest}, or a selector supported by {@link VersionCatalog#select}.
+     */
     public Version parseVersion(String value, boolean snapshot) {
         if (value == null || value.isEmpty() || value.equalsIgnoreCase("latest")) {
             return getLatestVersion();
-        } else {
-            for (Version version : versions) {
-                if (version.id().equals(value)) {
-                    return version;
-                }
-            }
-
-            return null;
         }
+
+        return versions.select(value, version -> true);
     }
 
     public List<Version> getVersions() {
-        return Collections.unmodifiableList(versions);
+        return versions.getVersions();
     }
 
     public void setVersions(List<Version> versions) {
-        this.versions = versions;
+        this.versions = new VersionCatalog<>(versions, Version::id);
     }
 
     public record Version(String id) {
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Persistent cache of metadata responses (manifests, loader json and git trees), stored together with their
+ * ETag and Last-Modified validators.
+ *
+ * <p>Entries younger than the TTL are served without touching the network. Older entries are revalidated with a
+ * conditional request and a 304 response is served from disk. If revalidation fails, an entry is still served for
+ * as long as the stale-if-error window allows, so a brief GitHub outage doesn't stop the installer.
+ */
+public final class MetaCache {
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+    public static final Duration DEFAULT_STALE_IF_ERROR = Duration.ofDays(7);
+
+    private static final String KEY_URL = "url";
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "lastModified";
+    private static final String KEY_FETCHED = "fetched";
+
+    private static volatile boolean enabled = true;
+    private static volatile Duration ttl = DEFAULT_TTL;
+    private static volatile Duration staleIfError = DEFAULT_STALE_IF_ERROR;
+
+    private MetaCache() {
+    }
+
+    public static Path getDirectory() {
+        return ArtifactCache.getDirectory().resolve("meta");
+    }
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    public static void setTtl(Duration value) {
+        ttl = value;
+    }
+
+    public static void setStaleIfError(Duration value) {
+        staleIfError = value;
+    }
+
+    /**
+     * Read url through the cache.
+     */
+    public static byte[] read(URL url) throws IOException {
+        if (!enabled) {
+            return HttpClient.join(HttpClient.readConditionalAsync(url, null, null)).body();
+        }
+
+        final String key = Utils.bytesToHex(sha1(url.toString()));
+        final Path bodyFile = getDirectory().resolve(key + ".body");
+        final Path infoFile = getDirectory().resolve(key + ".properties");
+        final Properties info = readInfo(infoFile);
+
+        long age = Long.MAX_VALUE;
+        if (info != null && Files.isRegularFile(bodyFile)) {
+            age = System.currentTimeMillis() - getFetched(info);
+
+            if (age >= 0 && age < ttl.toMillis()) {
+                return Files.readAllBytes(bodyFile);
+            }
+        }
+
+        final boolean cached = age != Long.MAX_VALUE;
+        final HttpClient.Response response;
+
+        try {
+            response = HttpClient.join(HttpClient.readConditionalAsync(url,
+                cached ? info.getProperty(KEY_ETAG) : null,
+                cached ? info.getProperty(KEY_LAST_MODIFIED) : null));
+        } catch (IOException e) {
+            if (cached && age < staleIfError.toMillis()) {
+                System.err.printf("Failed to revalidate %s, using cached copy: %s%n", url, e.getMessage());
+                return Files.readAllBytes(bodyFile);
+            }
+
+            throw e;
+        }
+
+        if (response.isNotModified() && cached) {
+            info.setProperty(KEY_FETCHED, Long.toString(System.currentTimeMillis()));
+            writeInfo(infoFile, info);
+            return Files.readAllBytes(bodyFile);
+        } else if (response.isNotModified()) {
+            throw new IOException("Unexpected 304 response for uncached request to " + url);
+        }
+
+        final Properties newInfo = new Properties();
+        newInfo.setProperty(KEY_URL, url.toString());
+        newInfo.setProperty(KEY_FETCHED, Long.toString(System.currentTimeMillis()));
+        if (response.etag() != null) {
+            newInfo.setProperty(KEY_ETAG, response.etag());
+        }
+        if (response.lastModified() != null) {
+            newInfo.setProperty(KEY_LAST_MODIFIED, response.lastModified());
+        }
+
+        try {
+            Files.createDirectories(bodyFile.getParent());
+            Utils.writeAtomically(bodyFile, os -> os.write(response.body()));
+            writeInfo(infoFile, newInfo);
+        } catch (IOException e) {
+            System.err.println("Failed to cache " + url + ": " + e);
+        }
+
+        return response.body();
+    }
+
+    private static long getFetched(Properties info) {
+        try {
+            return Long.parseLong(info.getProperty(KEY_FETCHED, "0"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static Properties readInfo(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        final Properties info = new Properties();
+
+        try (InputStream is = Files.newInputStream(path)) {
+            info.load(is);
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+
+        return info;
+    }
+
+    private static void writeInfo(Path path, Properties info) throws IOException {
+        Utils.writeAtomically(path, os -> info.store(os, null));
+    }
+
+    private static byte[] sha1(String value) {
+        return Checksum.Algorithm.SHA1.newDigest().digest(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
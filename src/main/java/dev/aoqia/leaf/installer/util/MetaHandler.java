@@ -17,15 +17,37 @@ package dev.aoqia.leaf.installer.util;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public abstract class MetaHandler<T> extends CompletableHandler<List<T>> {
     private final String metaPath;
+    private final AtomicBoolean loading = new AtomicBoolean();
 
     public MetaHandler(String metaPath) {
         this.metaPath = metaPath;
     }
 
     public abstract void load() throws IOException;
+
+    /**
+     * Load on executor unless already started, completing this handler exceptionally if loading fails.
+     */
+    public CompletableFuture<List<T>> loadAsync(Executor executor) {
+        if (loading.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                try {
+                    load();
+                } catch (IOException | RuntimeException e) {
+                    completeExceptionally(e);
+                }
+            });
+        }
+
+        return getFuture();
+    }
+
     public abstract T parseVersion(String value, boolean snapshot);
 
     public String getMetaPath() {
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.util;
+
+import java.util.Locale;
+
+/**
+ * Health of a single {@link LeafService} mirror: smoothed latency and throughput, plus a circuit breaker.
+ *
+ * <p>The breaker opens after a run of consecutive failures, so the mirror is skipped instead of costing every
+ * request a timeout. Once the cooldown has passed a single probe request is let through (half open), which either
+ * closes the breaker again or re-opens it.
+ */
+public final class MirrorStats {
+    // Weight of the newest sample in the moving averages.
+    private static final double ALPHA = 0.3;
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long COOLDOWN_MS = 30_000;
+    // Transfer size used to turn throughput into an expected request time when ranking mirrors.
+    private static final double TYPICAL_BYTES = 256 * 1024;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probing;
+    private int consecutiveFailures;
+    private long successes;
+    private long failures;
+    private double latencyMs = Double.NaN;
+    private double bytesPerMs = Double.NaN;
+
+    /**
+     * Check whether a request may be sent to this mirror right now, claiming the probe slot if half open.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= COOLDOWN_MS) {
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> false;
+            case HALF_OPEN -> {
+                if (probing) {
+                    yield false;
+                }
+
+                probing = true;
+                yield true;
+            }
+        };
+    }
+
+    public synchronized void recordSuccess(long elapsedMs, long bytes) {
+        successes++;
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+        probing = false;
+
+        latencyMs = average(latencyMs, elapsedMs);
+        if (bytes > 0) {
+            bytesPerMs = average(bytesPerMs, (double) bytes / Math.max(1, elapsedMs));
+        }
+    }
+
+    /**
+     * The mirror answered, but with a 4xx for this particular request. It is reachable, so this closes the breaker
+     * like a success does, without counting as one or adding a latency sample.
+     */
+    public synchronized void recordClientError() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+        probing = false;
+    }
+
+    public synchronized void recordFailure() {
+        failures++;
+        consecutiveFailures++;
+        probing = false;
+
+        if (state == State.HALF_OPEN || consecutiveFailures >= FAILURE_THRESHOLD) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Expected time in milliseconds of a typical request, lower is better. Mirrors without samples score 0 so they
+     * get tried, keeping their configured order.
+     */
+    public synchronized double getScore() {
+        if (Double.isNaN(latencyMs)) {
+            return 0;
+        }
+
+        return latencyMs + (Double.isNaN(bytesPerMs) ? 0 : TYPICAL_BYTES / bytesPerMs);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT, "%s, latency %s, throughput %s, %d ok / %d failed", state,
+            Double.isNaN(latencyMs) ? "n/a" : String.format(Locale.ROOT, "%.0f ms", latencyMs),
+            Double.isNaN(bytesPerMs) ? "n/a" : String.format(Locale.ROOT, "%.1f KiB/s", bytesPerMs * 1000 / 1024),
+            successes, failures);
+    }
+
+    private static double average(double current, double sample) {
+        return Double.isNaN(current) ? sample : ALPHA * sample + (1 - ALPHA) * current;
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+}
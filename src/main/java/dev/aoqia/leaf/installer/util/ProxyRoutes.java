@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which route (direct or a proxy) last worked for each host, across installer runs.
+ * The routes are stored in {@code routes.properties} in the cache directory.
+ */
+final class ProxyRoutes {
+    private static final String DIRECT = "DIRECT";
+
+    private static final Map<String, String> ROUTES = new ConcurrentHashMap<>();
+    private static volatile boolean loaded;
+
+    private ProxyRoutes() {
+    }
+
+    /**
+     * Whether proxy is the route remembered for host.
+     */
+    static boolean isPreferred(String host, Proxy proxy) {
+        load();
+        return host != null && getId(proxy).equals(ROUTES.get(host));
+    }
+
+    static void put(String host, Proxy proxy) {
+        if (host == null || isPreferred(host, proxy)) {
+            return;
+        }
+
+        ROUTES.put(host, getId(proxy));
+        save();
+    }
+
+    static void remove(String host, Proxy proxy) {
+        if (host != null && ROUTES.remove(host, getId(proxy))) {
+            save();
+        }
+    }
+
+    /**
+     * A stable string form of a route. Proxy equality depends on whether its address happens to be resolved.
+     */
+    static String getId(Proxy proxy) {
+        if (proxy.type() == Proxy.Type.DIRECT) {
+            return DIRECT;
+        }
+
+        final InetSocketAddress address = (InetSocketAddress) proxy.address();
+        return proxy.type() + " " + address.getHostString() + ":" + address.getPort();
+    }
+
+    private static Path getFile() {
+        return ArtifactCache.getDirectory().resolve("routes.properties");
+    }
+
+    private static synchronized void load() {
+        if (loaded) {
+            return;
+        }
+
+        loaded = true;
+        final Path file = getFile();
+
+        if (!ArtifactCache.isEnabled() || !Files.isRegularFile(file)) {
+            return;
+        }
+
+        final Properties properties = new Properties();
+
+        try (InputStream is = Files.newInputStream(file)) {
+            properties.load(is);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Failed to read proxy routes: " + e);
+            return;
+        }
+
+        for (String host : properties.stringPropertyNames()) {
+            ROUTES.put(host, properties.getProperty(host));
+        }
+    }
+
+    private static synchronized void save() {
+        if (!ArtifactCache.isEnabled()) {
+            return;
+        }
+
+        final Properties properties = new Properties();
+        properties.putAll(ROUTES);
+
+        final Path file = getFile();
+
+        try {
+            Files.createDirectories(file.getParent());
+            Utils.writeAtomically(file, os -> properties.store(os, "Last working route per host, see HttpClient"));
+        } catch (IOException e) {
+            System.err.println("Failed to save proxy routes: " + e);
+        }
+    }
+}
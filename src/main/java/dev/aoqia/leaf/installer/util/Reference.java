@@ -20,6 +20,7 @@ public class Reference {
     public static final String DEFAULT_MAVEN_SERVER = "https://repo.maven.apache.org/maven2/";
     public static final String LEAF_API_URL = DEFAULT_MAVEN_SERVER + "dev/aoqia/leaf/api/";
     static final String MANIFEST_REPOSITORY = "https://raw.githubusercontent.com/aoqia194/leaf/refs/heads/main/";
+    public static final String SERVER_GAME_FOLDER = "Project Zomboid Dedicated Server";
     public static final String ZOMBOID_VERSION_MANIFEST = "dist/manifests/index.json";
     static final String GITHUB_API = "https://api.github.com/";
     static final String DEFAULT_META_SERVER = MANIFEST_REPOSITORY;
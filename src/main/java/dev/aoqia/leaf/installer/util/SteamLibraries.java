@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the Steam library folders of an install from its steamapps/libraryfolders.vdf.
+ */
+public final class SteamLibraries {
+    // Both the current format ("path" inside a numbered block) and the old one (a numbered key per library).
+    private static final Pattern LIBRARY_PATH = Pattern.compile("\"(?:path|\\d+)\"\\s+\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+    private SteamLibraries() {
+    }
+
+    /**
+     * Every library folder of the Steam install at steamRoot, starting with steamRoot itself.
+     * Folders that no longer exist are left out.
+     */
+    public static List<Path> find(Path steamRoot) throws IOException {
+        final Set<Path> libraries = new LinkedHashSet<>();
+        libraries.add(steamRoot.toAbsolutePath().normalize());
+
+        final Path vdf = steamRoot.resolve("steamapps").resolve("libraryfolders.vdf");
+        if (Files.isRegularFile(vdf)) {
+            final Matcher matcher = LIBRARY_PATH.matcher(Files.readString(vdf));
+
+            while (matcher.find()) {
+                final Path path = Path.of(matcher.group(1).replaceAll("\\\\(.)", "$1"));
+
+                // App sizes in the "apps" block look like numbered libraries of the old format.
+                if (path.isAbsolute()) {
+                    libraries.add(path.normalize());
+                }
+            }
+        }
+
+        libraries.removeIf(path -> !Files.isDirectory(path));
+        return List.copyOf(libraries);
+    }
+
+    /**
+     * The install folder of a game in every library folder that has it.
+     */
+    public static List<Path> findGame(Path steamRoot, String folderName) throws IOException {
+        return find(steamRoot).stream()
+            .map(library -> library.resolve("steamapps").resolve("common").resolve(folderName))
+            .filter(Files::isDirectory)
+            .toList();
+    }
+}
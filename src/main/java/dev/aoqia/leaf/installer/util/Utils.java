@@ -15,16 +15,17 @@
  */
 package dev.aoqia.leaf.installer.util;
 
-import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.StandardCopyOption;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
@@ -32,8 +33,7 @@ import java.util.Base64;
 import java.util.Locale;
 import java.util.PropertyResourceBundle;
 import java.util.ResourceBundle;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.UUID;
 
 import static dev.aoqia.leaf.installer.Main.JSON;
 
@@ -61,6 +61,7 @@ public class Utils {
         });
 
     private static final int HTTP_TIMEOUT_MS = 8000;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
     public static Path getDefaultSteamLibraryPath() {
         if (OperatingSystem.CURRENT == OperatingSystem.MACOS) {
@@ -80,7 +81,7 @@ public class Utils {
         return getDefaultSteamLibraryPath()
             .resolve("steamapps")
             .resolve("common")
-            .resolve("Project Zomboid Dedicated Server");
+            .resolve(Reference.SERVER_GAME_FOLDER);
     }
 
     public static Path getClientGamePath() {
@@ -106,6 +107,10 @@ public class Utils {
     }
 
     public static String readString(InputStream is) throws IOException {
+        return new String(readBytes(is), StandardCharsets.UTF_8);
+    }
+
+    public static byte[] readBytes(InputStream is) throws IOException {
         byte[] data = new byte[Math.max(1000, is.available())];
         int offset = 0;
         int len;
@@ -128,13 +133,68 @@ public class Utils {
 			throw new IOException(String.format("Timed out after reading %d bytes", offset), e);
 		}
 
-        return new String(data, 0, offset, StandardCharsets.UTF_8);
+        return offset == data.length ? data : Arrays.copyOf(data, offset);
+    }
+
+    /**
+     * Read a stream whose length is known up front, such as a response with a Content-Length, straight into an array
+     * of that size. Falls back to {@link #readBytes(InputStream)} when the length is unknown (negative).
+     */
+    public static byte[] readBytes(InputStream is, long length) throws IOException {
+        if (length < 0 || length > Integer.MAX_VALUE - 8) {
+            return readBytes(is);
+        }
+
+        final byte[] data = new byte[(int) length];
+        final int read = is.readNBytes(data, 0, data.length);
+
+        if (read != data.length) {
+            throw new EOFException(String.format("Stream ended after %d of %d bytes", read, length));
+        }
+
+        return data;
     }
 
     public static void writeToFile(Path path, String string) throws IOException {
         Files.write(path, string.getBytes(StandardCharsets.UTF_8));
     }
 
+    /**
+     * Write path through a temporary file next to it that is then moved into place, so readers never see a partial
+     * file and a failed write leaves the old one intact.
+     */
+    public static void writeAtomically(Path path, IOConsumer<OutputStream> writer) throws IOException {
+        final Path temp = tempSibling(path);
+
+        try {
+            try (OutputStream os = Files.newOutputStream(temp)) {
+                writer.accept(os);
+            }
+
+            moveAtomically(temp, path);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * A unique temporary path next to path, on the same file system so it can be moved over it atomically.
+     */
+    public static Path tempSibling(Path path) {
+        return path.toAbsolutePath().resolveSibling(path.getFileName() + "." + UUID.randomUUID() + ".tmp");
+    }
+
+    /**
+     * Move source over target, atomically where the file system supports it.
+     */
+    public static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     public static String getProfileIcon() {
         try (InputStream is = Utils.class.getClassLoader().getResourceAsStream("profile_icon.png")) {
             byte[] ret = new byte[4096];
@@ -161,112 +221,52 @@ public class Utils {
     }
 
     public static byte[] sha1(Path path) throws IOException {
-        MessageDigest digest = sha1Digest();
+        return Hashing.digest(path, Checksum.Algorithm.SHA1)[0];
+    }
 
-        try (InputStream is = Files.newInputStream(path)) {
-            byte[] buffer = new byte[64 * 1024];
-            int len;
+    public static String bytesToHex(byte[] bytes) {
+        final char[] output = new char[bytes.length * 2];
 
-            while ((len = is.read(buffer)) >= 0) {
-                digest.update(buffer, 0, len);
-            }
+        for (int i = 0; i < bytes.length; i++) {
+            output[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            output[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
         }
 
-        return digest.digest();
+        return new String(output);
     }
 
-    private static MessageDigest sha1Digest() {
-        try {
-            return MessageDigest.getInstance("SHA-1");
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Something has gone really wrong", e);
+    /**
+     * Compare a hex string to raw bytes, ignoring case, without encoding the bytes first.
+     */
+    public static boolean hexEquals(CharSequence hex, byte[] bytes) {
+        if (hex.length() != bytes.length * 2) {
+            return false;
         }
-    }
 
-    public static String bytesToHex(byte[] bytes) {
-        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < bytes.length; i++) {
+            final int high = Character.digit(hex.charAt(i * 2), 16);
+            final int low = Character.digit(hex.charAt(i * 2 + 1), 16);
 
-        for (byte b : bytes) {
-            output.append(String.format(Locale.ENGLISH, "%02x", b));
+            if (high < 0 || low < 0 || (byte) ((high << 4) | low) != bytes[i]) {
+                return false;
+            }
         }
 
-        return output.toString();
+        return true;
     }
 
     /**
-     * Simple semver-like version comparison.
+     * Simple semver-like version comparison, see {@link VersionCatalog.Key}.
      *
      * @return (0, 0, )0 if versionA is less/same/greater than versionB
      */
     public static int compareVersions(String versionA, String versionB) {
-        Pattern pattern = Pattern.compile("(\\d+(?:\\.\\d+)*)(?:-([^+]+))?(?:\\+.*)?");
-        Matcher matcherA = pattern.matcher(versionA);
-        Matcher matcherB = pattern.matcher(versionB);
-        if (!matcherA.matches() || !matcherB.matches()) {
-            return versionA.compareTo(versionB);
-        }
-
-        int cmp = compareVersionGroups(matcherA.group(1), matcherB.group(1)); // compare version core
-        if (cmp != 0) {
-            return cmp;
-        }
-
-        boolean aHasPreRelease = matcherA.group(2) != null;
-        boolean bHasPreRelease = matcherB.group(2) != null;
-
-        if (aHasPreRelease != bHasPreRelease) { // compare pre-release presence
-            return aHasPreRelease ? -1 : 1;
-        }
-
-        if (aHasPreRelease) {
-            cmp = compareVersionGroups(matcherA.group(2), matcherB.group(2)); // compare pre-release
-            return cmp;
-        }
-
-        return 0;
+        return VersionCatalog.Key.parse(versionA).compareTo(VersionCatalog.Key.parse(versionB));
     }
 
-    private static int compareVersionGroups(String groupA, String groupB) {
-        String[] partsA = groupA.split("\\.");
-        String[] partsB = groupB.split("\\.");
-
-        for (int i = 0; i < Math.min(partsA.length, partsB.length); i++) {
-            String partA = partsA[i];
-            String partB = partsB[i];
-
-            try {
-                int a = Integer.parseInt(partA);
-
-                try {
-                    int b = Integer.parseInt(partB);
-                    int cmp = Integer.compare(a, b); // both numeric, compare int value
-                    if (cmp != 0) {
-                        return cmp;
-                    }
-                } catch (NumberFormatException e) {
-                    return -1; // only a numeric
-                }
-            } catch (NumberFormatException e) {
-                try {
-                    Integer.parseInt(partB);
-                    return 1; // only b numeric
-                } catch (NumberFormatException e2) {
-                    // ignore
-                }
-            }
-
-            int cmp = partA.compareTo(partB); // neither numeric, compare lexicographically
-            if (cmp != 0) {
-                return cmp;
-            }
-        }
-
-        return Integer.compare(partsA.length, partsB.length); // compare part count
-    }
-
-    public static <T> T deserializeJson(byte[] byteStr, Class<T> clazz) throws IOException {
-        ByteArrayInputStream is = new ByteArrayInputStream(byteStr);
-        return JSON.deserialize(clazz, is);
+    public static <T> T deserializeJson(byte[] bytes, Class<T> clazz) throws IOException {
+        // Parsed in place by the thread local reader of DslJson, without copying into a stream buffer first.
+        return JSON.deserialize(clazz, bytes, bytes.length);
     }
 
     public static <T> T deserializeJson(InputStream is, Class<T> clazz) throws IOException {
@@ -274,6 +274,15 @@ public class Utils {
     }
 
     public static <T> T deserializeJson(String str, Class<T> clazz) throws IOException {
-        return deserializeJson(str.getBytes(), clazz);
+        return deserializeJson(str.getBytes(StandardCharsets.UTF_8), clazz);
+    }
+
+    public static void serializeJson(Object value, OutputStream os) throws IOException {
+        JSON.serialize(value, os);
+    }
+
+    @FunctionalInterface
+    public interface IOConsumer<T> {
+        void accept(T value) throws IOException;
     }
 }
@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A set of versions sorted newest first and indexed by id. Every id is parsed into a {@link Key} once, up front, so
+ * ordering and lookups never parse strings again.
+ *
+ * <p>Versions can be selected by exact id, {@code latest}, a wildcard such as {@code 41.78.x}, or a range such as
+ * {@code >=0.4}. Exact ids are a hash lookup and the other selectors a binary search over the sorted keys.
+ */
+public final class VersionCatalog<V> {
+    private final List<V> versions;
+    private final Key[] keys;
+    private final Map<String, V> byId;
+
+    public VersionCatalog(Collection<V> versions, Function<V, String> idFunction) {
+        final List<Entry<V>> entries = new ArrayList<>(versions.size());
+        for (V version : versions) {
+            entries.add(new Entry<>(version, Key.parse(idFunction.apply(version))));
+        }
+
+        entries.sort((a, b) -> b.key().compareTo(a.key()));
+
+        this.keys = new Key[entries.size()];
+        this.byId = new HashMap<>(entries.size() * 2);
+        final List<V> sorted = new ArrayList<>(entries.size());
+
+        for (int i = 0; i < entries.size(); i++) {
+            keys[i] = entries.get(i).key();
+            sorted.add(entries.get(i).version());
+            byId.putIfAbsent(keys[i].id, entries.get(i).version());
+        }
+
+        this.versions = Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * All versions, newest first.
+     */
+    public List<V> getVersions() {
+        return versions;
+    }
+
+    public boolean isEmpty() {
+        return versions.isEmpty();
+    }
+
+    public V get(String id) {
+        return byId.get(id);
+    }
+
+    /**
+     * The newest version accepted by filter, or null if there is none.
+     */
+    public V getLatest(Predicate<V> filter) {
+        return first(0, filter, key -> true);
+    }
+
+    /**
+     * Select the newest version matching selector, or null if there is none.
+     * filter applies to everything but exact ids, such as excluding unstable versions unless asked for.
+     *
+     * @param selector {@code latest} (or null/empty), an exact id, a wildcard like {@code 41.78.x} or a range like
+     *                 {@code >=0.4}, {@code >0.4}, {@code <=0.4}, {@code <0.4} or {@code =0.4}
+     */
+    public V select(String selector, Predicate<V> filter) {
+        if (selector == null || selector.isEmpty() || selector.equalsIgnoreCase("latest")) {
+            return getLatest(filter);
+        }
+
+        final V exact = byId.get(selector);
+        if (exact != null) {
+            return exact;
+        }
+
+        if (selector.endsWith(".x") || selector.endsWith(".*")) {
+            final Key prefix = Key.parse(selector.substring(0, selector.length() - 2));
+            if (prefix.core == null) {
+                return null;
+            }
+
+            // Keys are sorted newest first, so skip everything newer than the prefix and take matches from there.
+            return first(search(key -> key.comparePrefix(prefix) <= 0), filter, key -> key.comparePrefix(prefix) == 0);
+        }
+
+        final int operatorLength = selector.startsWith(">=") || selector.startsWith("<=") ? 2
+            : selector.startsWith(">") || selector.startsWith("<") || selector.startsWith("=") ? 1 : 0;
+        if (operatorLength == 0) {
+            return null;
+        }
+
+        final String operator = selector.substring(0, operatorLength);
+        final Key bound = Key.parse(selector.substring(operatorLength).trim());
+        if (bound.core == null) {
+            return null;
+        }
+
+        return switch (operator) {
+            case ">=" -> first(0, filter, key -> key.compareRange(bound) >= 0);
+            case ">" -> first(0, filter, key -> key.compareRange(bound) > 0);
+            case "<=" -> first(search(key -> key.compareRange(bound) <= 0), filter, key -> key.core != null);
+            case "<" -> first(search(key -> key.compareRange(bound) < 0), filter, key -> key.core != null);
+            default -> first(search(key -> key.compareRange(bound) <= 0), filter, key -> key.compareRange(bound) == 0);
+        };
+    }
+
+    // Index of the first key accepted by a predicate that, like the keys, only changes from false to true once.
+    private int search(Predicate<Key> predicate) {
+        int low = 0;
+        int high = keys.length;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (predicate.test(keys[mid])) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        return low;
+    }
+
+    // The first version from index on accepted by filter, as long as its key keeps matching.
+    private V first(int index, Predicate<V> filter, Predicate<Key> matches) {
+        for (int i = index; i < keys.length && matches.test(keys[i]); i++) {
+            if (filter.test(versions.get(i))) {
+                return versions.get(i);
+            }
+        }
+
+        return null;
+    }
+
+    private record Entry<V>(V version, Key key) {
+    }
+
+    /**
+     * A parsed, semver-like version: numeric core components and an optional pre-release, with build metadata
+     * ignored. Cores compare as if padded with zeros, so {@code 1.0} and {@code 1.0.0} only differ by the final
+     * tie-break on their length, and a pre-release sorts before its release. Ids that don't parse sort below every id
+     * that does, and among themselves as strings.
+     */
+    public static final class Key implements Comparable<Key> {
+        private static final int NOT_NUMERIC = -1;
+
+        private final String id;
+        private final int[] core;
+        private final String[] pre;
+        private final int[] preNumbers;
+
+        private Key(String id, int[] core, String[] pre, int[] preNumbers) {
+            this.id = id;
+            this.core = core;
+            this.pre = pre;
+            this.preNumbers = preNumbers;
+        }
+
+        public static Key parse(String id) {
+            int end = id.indexOf('+');
+            final String version = end >= 0 ? id.substring(0, end) : id;
+            final int dash = version.indexOf('-');
+            final int[] core = parseCore(dash >= 0 ? version.substring(0, dash) : version);
+
+            if (core == null || dash == version.length() - 1) {
+                return new Key(id, null, null, null);
+            } else if (dash < 0) {
+                return new Key(id, core, null, null);
+            }
+
+            final String[] pre = version.substring(dash + 1).split("\\.");
+            final int[] preNumbers = new int[pre.length];
+
+            for (int i = 0; i < pre.length; i++) {
+                preNumbers[i] = parseNumber(pre[i]);
+            }
+
+            return new Key(id, core, pre, preNumbers);
+        }
+
+        private static int[] parseCore(String core) {
+            if (core.isEmpty()) {
+                return null;
+            }
+
+            final String[] parts = core.split("\\.", -1);
+            final int[] numbers = new int[parts.length];
+
+            for (int i = 0; i < parts.length; i++) {
+                numbers[i] = parseNumber(parts[i]);
+
+                if (numbers[i] == NOT_NUMERIC) {
+                    return null;
+                }
+            }
+
+            return numbers;
+        }
+
+        private static int parseNumber(String part) {
+            if (part.isEmpty() || part.length() > 9) {
+                return NOT_NUMERIC;
+            }
+
+            int value = 0;
+
+            for (int i = 0; i < part.length(); i++) {
+                char c = part.charAt(i);
+
+                if (c < '0' || c > '9') {
+                    return NOT_NUMERIC;
+                }
+
+                value = value * 10 + (c - '0');
+            }
+
+            return value;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            if (core == null || other.core == null) {
+                return compareUnparsed(other);
+            }
+
+            int cmp = compareRange(other);
+            return cmp != 0 ? cmp : Integer.compare(core.length, other.core.length);
+        }
+
+        // Order ignoring how many zero components the core was written with, used for range bounds.
+        private int compareRange(Key other) {
+            if (core == null || other.core == null) {
+                return compareUnparsed(other);
+            }
+
+            for (int i = 0; i < Math.max(core.length, other.core.length); i++) {
+                int cmp = Integer.compare(i < core.length ? core[i] : 0, i < other.core.length ? other.core[i] : 0);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+
+            if ((pre == null) != (other.pre == null)) {
+                return pre == null ? 1 : -1;
+            }
+
+            return pre != null ? comparePre(other) : 0;
+        }
+
+        // One block below every parsed key, comparing ids with each other would mix two orders and break transitivity.
+        private int compareUnparsed(Key other) {
+            if (core != null || other.core != null) {
+                return core != null ? 1 : -1;
+            }
+
+            return id.compareTo(other.id);
+        }
+
+        private int comparePre(Key other) {
+            for (int i = 0; i < Math.min(pre.length, other.pre.length); i++) {
+                final boolean numeric = preNumbers[i] != NOT_NUMERIC;
+                final boolean otherNumeric = other.preNumbers[i] != NOT_NUMERIC;
+                final int cmp;
+
+                if (numeric && otherNumeric) {
+                    cmp = Integer.compare(preNumbers[i], other.preNumbers[i]);
+                } else if (numeric != otherNumeric) {
+                    cmp = numeric ? -1 : 1;
+                } else {
+                    cmp = pre[i].compareTo(other.pre[i]);
+                }
+
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+
+            return Integer.compare(pre.length, other.pre.length);
+        }
+
+        // Compare only the components given by a wildcard prefix, such as 41.78 for 41.78.x.
+        private int comparePrefix(Key prefix) {
+            if (core == null) {
+                return -1;
+            }
+
+            for (int i = 0; i < prefix.core.length; i++) {
+                int cmp = Integer.compare(i < core.length ? core[i] : 0, prefix.core[i]);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+
+            return 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key key && compareTo(key) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return core != null ? Arrays.hashCode(core) : id.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return id;
+        }
+    }
+}
@@ -18,7 +18,7 @@ package dev.aoqia.leaf.installer.util.json;
 import com.dslplatform.json.CompiledJson;
 
 @CompiledJson
-public record GitTree(String sha, String url, GitTreeObject[] tree) {
+public record GitTree(String sha, String url, GitTreeObject[] tree, boolean truncated) {
     @CompiledJson
     public record GitTreeObject(String path, String mode, String type, String sha, String url, int size) {}
 }
@@ -25,6 +25,10 @@ public final class LauncherConfig {
     private List<String> vmArgs;
     private List<String> classpath;
 
+    // Used by DslJson, which can't match constructor parameters to properties without -parameters.
+    public LauncherConfig() {
+    }
+
     public LauncherConfig(String mainClass, List<String> vmArgs, List<String> classpath) {
         this.mainClass = mainClass;
         this.vmArgs = vmArgs;
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import dev.aoqia.leaf.installer.util.Checksum;
+import dev.aoqia.leaf.installer.util.Hashing;
+import dev.aoqia.leaf.installer.util.Utils;
+
+public class HashingTests {
+    @Test
+    public void testDigest() throws IOException {
+        // Empty, less than a block, exactly a block, and many blocks with a partial last one.
+        for (int size : new int[] {0, 1000, 64 * 1024, 3 * 1024 * 1024 + 17}) {
+            final byte[] data = randomBytes(size);
+            final Path file = write(data);
+
+            try {
+                final byte[][] digests = Hashing.digest(file, Checksum.Algorithm.values());
+
+                for (int i = 0; i < digests.length; i++) {
+                    final Checksum.Algorithm algorithm = Checksum.Algorithm.values()[i];
+                    Assert.assertArrayEquals(algorithm + " of " + size + " bytes",
+                        MessageDigest.getInstance(algorithm.newDigest().getAlgorithm()).digest(data), digests[i]);
+                }
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testHex() {
+        final byte[] bytes = {0, 1, 0x7f, (byte) 0x80, (byte) 0xab, (byte) 0xff};
+
+        Assert.assertEquals("00017f80abff", Utils.bytesToHex(bytes));
+        Assert.assertTrue(Utils.hexEquals("00017f80abff", bytes));
+        Assert.assertTrue(Utils.hexEquals("00017F80ABFF", bytes));
+        Assert.assertFalse(Utils.hexEquals("00017f80abfe", bytes));
+        Assert.assertFalse(Utils.hexEquals("00017f80ab", bytes));
+        Assert.assertFalse(Utils.hexEquals("00017f80abzz", bytes));
+    }
+
+    @Test
+    public void testVerifyAll() throws IOException {
+        final byte[] data = randomBytes(100_000);
+        final Path good = write(data);
+        final byte[] corrupt = data.clone();
+        corrupt[corrupt.length / 2] ^= 1;
+        final Path bad = write(corrupt);
+        final Path missing = good.resolveSibling(good.getFileName() + ".missing");
+
+        try {
+            final String sha1 = Utils.bytesToHex(Hashing.digest(good, Checksum.Algorithm.SHA1)[0]);
+            final String sha256 = Utils.bytesToHex(Hashing.digest(good, Checksum.Algorithm.SHA256)[0]);
+            final List<Checksum> checksums = List.of(new Checksum(Checksum.Algorithm.SHA256, sha256),
+                new Checksum(Checksum.Algorithm.SHA1, sha1));
+
+            final Hashing.Target goodTarget = new Hashing.Target(good, (long) data.length, checksums);
+            final Hashing.Target badTarget = new Hashing.Target(bad, (long) data.length, checksums);
+            final Hashing.Target wrongSize = new Hashing.Target(good, data.length + 1L, checksums);
+            final Hashing.Target missingTarget = new Hashing.Target(missing, null, checksums);
+            final Hashing.Target unchecked = new Hashing.Target(good, null, List.of());
+
+            final List<Hashing.Target> failed = Hashing.verifyAll(
+                List.of(goodTarget, badTarget, wrongSize, missingTarget, unchecked));
+
+            Assert.assertEquals(4, failed.size());
+            Assert.assertFalse(failed.contains(goodTarget));
+        } finally {
+            Files.delete(good);
+            Files.delete(bad);
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        final byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static Path write(byte[] data) throws IOException {
+        final Path file = Files.createTempFile("leaf-hashing", ".bin");
+        Files.write(file, data);
+        return file;
+    }
+}
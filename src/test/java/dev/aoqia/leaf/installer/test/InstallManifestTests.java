@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import dev.aoqia.leaf.installer.util.InstallManifest;
+import dev.aoqia.leaf.installer.util.InstallerProgress;
+import dev.aoqia.leaf.installer.util.json.InstallState;
+import dev.aoqia.leaf.installer.util.json.LoaderJson;
+
+public class InstallManifestTests {
+    private static final String LOADER = "0.1.0";
+    private static final String GAME_VERSION = "41.78.16";
+
+    @Test
+    public void testReinstall() throws IOException {
+        final Path gameDir = Files.createTempDirectory("leaf-manifest");
+
+        try {
+            final Path libs = gameDir.resolve(".leaf/libraries");
+            install(gameDir, null, libs.resolve("a-1.jar"), libs.resolve("b-1.jar"));
+            final InstallState state = InstallManifest.read(gameDir);
+
+            Assert.assertTrue(InstallManifest.isUpToDate(gameDir, state, "server", LOADER, GAME_VERSION));
+            Assert.assertFalse(InstallManifest.isUpToDate(gameDir, state, "server", "0.2.0", GAME_VERSION));
+
+            // Untouched libraries are reused as they are.
+            final InstallManifest manifest = new InstallManifest(gameDir, state, "server", LOADER, GAME_VERSION, "Main");
+            Assert.assertTrue(manifest.add(library("a-1.jar"), libs.resolve("a-1.jar")));
+
+            // A library touched since the install isn't.
+            Files.setLastModifiedTime(libs.resolve("b-1.jar"), FileTime.fromMillis(1000));
+            Assert.assertFalse(InstallManifest.isUpToDate(gameDir, state, "server", LOADER, GAME_VERSION));
+            Assert.assertFalse(manifest.add(library("b-1.jar"), libs.resolve("b-1.jar")));
+        } finally {
+            deleteRecursively(gameDir);
+        }
+    }
+
+    @Test
+    public void testUpgrade() throws IOException {
+        final Path gameDir = Files.createTempDirectory("leaf-manifest");
+
+        try {
+            final Path libs = gameDir.resolve(".leaf/libraries");
+            install(gameDir, null, libs.resolve("a-1.jar"), libs.resolve("b-1.jar"));
+            Files.writeString(libs.resolve("user.jar"), "user");
+
+            install(gameDir, InstallManifest.read(gameDir), libs.resolve("a-1.jar"), libs.resolve("c-2.jar"));
+
+            // Only what the previous install placed is removed, not anything else in the folder.
+            Assert.assertEquals(List.of("a-1.jar", "c-2.jar", "user.jar"), list(libs));
+        } finally {
+            deleteRecursively(gameDir);
+        }
+    }
+
+    @Test
+    public void testTamperedState() throws IOException {
+        final Path gameDir = Files.createTempDirectory("leaf-manifest");
+        final Path outside = Files.createTempFile("leaf-manifest", ".txt");
+
+        try {
+            final Path libs = gameDir.resolve(".leaf/libraries");
+            final Path config = gameDir.resolve("ProjectZomboid64.json");
+            Files.createDirectories(libs);
+            Files.writeString(config, "{}");
+
+            final InstallState tampered = new InstallState(InstallManifest.FORMAT_VERSION, "server", LOADER,
+                GAME_VERSION, "Main", List.of(artifact(gameDir, config), artifact(gameDir, outside),
+                artifact(gameDir, libs.resolve("../../ProjectZomboid64.json"))));
+            install(gameDir, tampered, libs.resolve("a-1.jar"));
+
+            Assert.assertTrue(Files.exists(config));
+            Assert.assertTrue(Files.exists(outside));
+        } finally {
+            deleteRecursively(gameDir);
+            Files.deleteIfExists(outside);
+        }
+    }
+
+    private static void install(Path gameDir, InstallState previous, Path... targets) throws IOException {
+        final InstallManifest manifest = new InstallManifest(gameDir, previous, "server", LOADER, GAME_VERSION, "Main");
+
+        for (Path target : targets) {
+            if (!manifest.add(library(target.getFileName().toString()), target)) {
+                Files.createDirectories(target.getParent());
+                Files.writeString(target, target.getFileName().toString());
+            }
+        }
+
+        manifest.commit(new InstallerProgress() {
+            @Override
+            public void updateProgress(String text) {
+            }
+
+            @Override
+            public void error(Throwable throwable) {
+                throw new AssertionError(throwable);
+            }
+        });
+    }
+
+    private static LoaderJson.Library library(String fileName) {
+        return new LoaderJson.Library("test:" + fileName, null, null, null, null, null, null);
+    }
+
+    private static InstallState.Artifact artifact(Path gameDir, Path path) throws IOException {
+        // Written by hand, so the path is kept exactly as given rather than normalized.
+        return new InstallState.Artifact("test:" + path.getFileName(), null, null,
+            gameDir.relativize(path).toString().replace('\\', '/'), Files.size(path),
+            Files.getLastModifiedTime(path).toMillis());
+    }
+
+    private static List<String> list(Path dir) throws IOException {
+        try (Stream<Path> stream = Files.list(dir)) {
+            return stream.map(path -> path.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> stream = Files.walk(dir)) {
+            for (Path path : stream.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
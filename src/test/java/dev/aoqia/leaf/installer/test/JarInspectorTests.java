@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import dev.aoqia.leaf.installer.util.JarInspector;
+
+public class JarInspectorTests {
+    private static final byte[] MOD_JSON = "{\"version\":\"0.1.0\"}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] INSTALLER_JSON = "{\"mainClass\":{}}".repeat(100).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testInspect() throws IOException {
+        final Path jar = Files.createTempFile("inspector", ".jar");
+
+        try {
+            try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+                out.setComment("a comment at the end of the archive");
+                putStored(out, JarInspector.MOD_JSON, MOD_JSON);
+                put(out, JarInspector.INSTALLER_JSON, INSTALLER_JSON);
+                put(out, "META-INF/MANIFEST.MF", new byte[0]);
+                put(out, "META-INF/versions/9/module-info.class", new byte[0]);
+                put(out, "dev/aoqia/Example.class", new byte[10]);
+                put(out, "dev/aoqia/package-info.class", new byte[0]);
+            }
+
+            final JarInspector.Contents contents = JarInspector.inspect(jar);
+            Assert.assertArrayEquals(MOD_JSON, contents.getDescriptor(JarInspector.MOD_JSON));
+            Assert.assertArrayEquals(INSTALLER_JSON, contents.getDescriptor(JarInspector.INSTALLER_JSON));
+            Assert.assertEquals(List.of("dev/aoqia/Example"), contents.classes());
+
+            Assert.assertSame(contents, JarInspector.inspect(jar));
+
+            // A link to the same file is the same jar, where the file system can tell.
+            final Path link = jar.resolveSibling(jar.getFileName() + ".link");
+            try {
+                Files.createLink(link, jar);
+                if (Files.readAttributes(link, BasicFileAttributes.class).fileKey() != null) {
+                    Assert.assertSame(contents, JarInspector.inspect(link));
+                }
+            } finally {
+                Files.deleteIfExists(link);
+            }
+
+            // Rewritten without the descriptors, and dated differently in case the size happens to match.
+            try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+                put(out, "dev/aoqia/Other.class", new byte[10]);
+            }
+            Files.setLastModifiedTime(jar, FileTime.fromMillis(contents.modified() + 10_000));
+
+            final JarInspector.Contents changed = JarInspector.inspect(jar);
+            Assert.assertEquals(List.of("dev/aoqia/Other"), changed.classes());
+            Assert.assertThrows(IOException.class, () -> changed.getDescriptor(JarInspector.MOD_JSON));
+        } finally {
+            Files.deleteIfExists(jar);
+        }
+    }
+
+    @Test
+    public void testZip64() throws IOException {
+        final Path jar = Files.createTempFile("inspector", ".jar");
+
+        try {
+            // More entries than the plain end record can count.
+            final List<String> classes = new ArrayList<>();
+            try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+                for (int i = 0; i < 70_000; i++) {
+                    classes.add("c/C" + i);
+                    putStored(out, "c/C" + i + ".class", new byte[0]);
+                }
+
+                put(out, JarInspector.MOD_JSON, MOD_JSON);
+            }
+
+            final JarInspector.Contents contents = JarInspector.inspect(jar);
+            Assert.assertEquals(classes, contents.classes());
+            Assert.assertArrayEquals(MOD_JSON, contents.getDescriptor(JarInspector.MOD_JSON));
+        } finally {
+            Files.deleteIfExists(jar);
+        }
+    }
+
+    @Test
+    public void testNotAJar() throws IOException {
+        final Path file = Files.createTempFile("inspector", ".jar");
+
+        try {
+            Files.write(file, new byte[100]);
+            Assert.assertThrows(IOException.class, () -> JarInspector.inspect(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void put(ZipOutputStream out, String name, byte[] data) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(data);
+        out.closeEntry();
+    }
+
+    private static void putStored(ZipOutputStream out, String name, byte[] data) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+
+        final ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCrc(crc.getValue());
+
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.test;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import dev.aoqia.leaf.installer.util.JvmProfile;
+
+public class JvmProfileTests {
+    private static final long GIB = 1024L * 1024 * 1024;
+
+    @Test
+    public void testArgs() {
+        Assert.assertEquals(List.of("-Xms512m", "-Xmx512m", "-XX:+UseSerialGC"),
+            JvmProfile.getArgs(new JvmProfile.Host(1, GIB)));
+        Assert.assertEquals(List.of("-Xms1536m", "-Xmx6144m", "-XX:+UseG1GC", "-XX:MaxGCPauseMillis=50",
+                "-XX:ParallelGCThreads=4", "-XX:ConcGCThreads=1"),
+            JvmProfile.getArgs(new JvmProfile.Host(4, 8 * GIB)));
+        // Past the compressed pointer limit, but not enough cores for ZGC.
+        Assert.assertEquals("-Xmx31744m", JvmProfile.getArgs(new JvmProfile.Host(4, 64 * GIB)).get(1));
+        Assert.assertEquals(List.of("-Xms12288m", "-Xmx49152m", "-XX:+UseZGC", "-XX:ParallelGCThreads=23",
+                "-XX:ConcGCThreads=6"),
+            JvmProfile.getArgs(new JvmProfile.Host(32, 64 * GIB)));
+    }
+
+    @Test
+    public void testSharedHost() {
+        // Four servers on the same host, each gets a quarter of the heap and cores.
+        Assert.assertEquals(List.of("-Xms3072m", "-Xmx12288m", "-XX:+UseG1GC", "-XX:MaxGCPauseMillis=50",
+                "-XX:ParallelGCThreads=8",
+                "-XX:ConcGCThreads=2"),
+            JvmProfile.getArgs(new JvmProfile.Host(32, 64 * GIB), 4));
+        // Never below the minimum heap, however many share it.
+        Assert.assertEquals(List.of("-Xms512m", "-Xmx512m", "-XX:+UseSerialGC"),
+            JvmProfile.getArgs(new JvmProfile.Host(4, 2 * GIB), 8));
+    }
+
+    @Test
+    public void testApply() {
+        final List<String> stock = List.of("-Djava.awt.headless=true", "-Xms16g", "-Xmx16g", "-XX:+UseZGC",
+            "-XX:-OmitStackTraceInFastThrow", "-XX:ParallelGCThreads=2");
+        final JvmProfile.Host host = new JvmProfile.Host(4, 8 * GIB);
+
+        final List<String> tuned = JvmProfile.apply(stock, host);
+        Assert.assertEquals(List.of("-Djava.awt.headless=true", "-XX:-OmitStackTraceInFastThrow"),
+            tuned.subList(0, 2));
+        Assert.assertEquals(JvmProfile.getArgs(host), tuned.subList(2, tuned.size()));
+
+        // Tuning an already tuned config changes nothing.
+        Assert.assertEquals(tuned, JvmProfile.apply(tuned, host));
+    }
+}
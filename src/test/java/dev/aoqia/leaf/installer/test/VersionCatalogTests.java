@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2016-2025 FabricMC, aoqia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.aoqia.leaf.installer.test;
+
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import dev.aoqia.leaf.installer.util.Utils;
+import dev.aoqia.leaf.installer.util.VersionCatalog;
+
+public class VersionCatalogTests {
+    private static final VersionCatalog<String> LOADER = new VersionCatalog<>(
+        List.of("0.9.0", "0.10.0", "0.4.2", "0.4.10", "0.3.0"), Function.identity());
+    private static final VersionCatalog<String> GAME = new VersionCatalog<>(
+        List.of("41.78.16", "41.78.7", "42.0.0-unstable.2", "42.0.0-unstable.10", "41.77.9"), Function.identity());
+    private static final VersionCatalog<String> MIXED = new VersionCatalog<>(
+        List.of("0.2.0", "snapshot", "0.10.0", "1.0.0+local", "1.x-dev"), Function.identity());
+
+    @Test
+    public void testOrder() {
+        Assert.assertEquals(List.of("0.10.0", "0.9.0", "0.4.10", "0.4.2", "0.3.0"), LOADER.getVersions());
+        Assert.assertEquals(List.of("42.0.0-unstable.10", "42.0.0-unstable.2", "41.78.16", "41.78.7", "41.77.9"),
+            GAME.getVersions());
+    }
+
+    @Test
+    public void testUnparseable() {
+        // Ids that don't parse sort as one block after every version that does, whatever they look like as strings.
+        Assert.assertEquals(List.of("1.0.0+local", "0.10.0", "0.2.0", "snapshot", "1.x-dev"), MIXED.getVersions());
+        Assert.assertTrue(Utils.compareVersions("snapshot", "0.10.0") < 0);
+        Assert.assertTrue(Utils.compareVersions("0.2.0", "snapshot") > 0);
+        Assert.assertTrue(Utils.compareVersions("1.x-dev", "snapshot") < 0);
+        Assert.assertEquals("1.0.0+local", MIXED.select("latest", v -> true));
+        Assert.assertEquals("snapshot", MIXED.select("snapshot", v -> true));
+        Assert.assertNull(MIXED.select("<0.2", v -> true));
+    }
+
+    @Test
+    public void testCompareVersions() {
+        Assert.assertTrue(Utils.compareVersions("0.10.0", "0.9.0") > 0);
+        Assert.assertTrue(Utils.compareVersions("1.0.0-beta", "1.0.0") < 0);
+        Assert.assertTrue(Utils.compareVersions("1.0", "1.0.0") < 0);
+        Assert.assertEquals(0, Utils.compareVersions("1.2.3+build.5", "1.2.3"));
+    }
+
+    @Test
+    public void testExact() {
+        Assert.assertEquals("0.4.2", LOADER.get("0.4.2"));
+        Assert.assertEquals("0.4.2", LOADER.select("0.4.2", v -> true));
+        Assert.assertNull(LOADER.select("0.5.0", v -> true));
+    }
+
+    @Test
+    public void testLatest() {
+        Assert.assertEquals("0.10.0", LOADER.select("latest", v -> true));
+        Assert.assertEquals("41.78.16", GAME.getLatest(v -> !v.contains("-unstable")));
+    }
+
+    @Test
+    public void testWildcard() {
+        Assert.assertEquals("0.4.10", LOADER.select("0.4.x", v -> true));
+        Assert.assertEquals("41.78.16", GAME.select("41.78.x", v -> true));
+        Assert.assertEquals("41.78.16", GAME.select("41.x", v -> true));
+        Assert.assertEquals("41.77.9", GAME.select("41.77.*", v -> true));
+        Assert.assertNull(GAME.select("40.x", v -> true));
+    }
+
+    @Test
+    public void testRanges() {
+        Assert.assertEquals("0.10.0", LOADER.select(">=0.4", v -> true));
+        Assert.assertEquals("0.9.0", LOADER.select("<0.10", v -> true));
+        Assert.assertEquals("0.4.10", LOADER.select("<0.9", v -> true));
+        Assert.assertEquals("0.9.0", LOADER.select("<=0.9", v -> true));
+        Assert.assertEquals("0.3.0", LOADER.select("=0.3", v -> true));
+        Assert.assertNull(LOADER.select(">0.10.0", v -> true));
+        Assert.assertEquals("41.78.16", GAME.select(">=41", v -> !v.contains("-unstable")));
+        // Pre-releases come before their release.
+        Assert.assertEquals("42.0.0-unstable.10", GAME.select("<42", v -> true));
+        Assert.assertEquals("41.78.16", GAME.select("<42", v -> !v.contains("-unstable")));
+    }
+}